@@ -0,0 +1,307 @@
+package com.activitytracker;
+
+import java.util.Date;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An asynchronous facade over DBManager: each method starts the corresponding blocking operation on a background
+ * thread and returns a CompletableFuture of its result, so callers can chain further work (\em e.g., updating the UI
+ * with CompletableFuture#thenAcceptAsync() and SwingUtilities#invokeLater()) instead of managing their own threads.
+ *
+ * Work is run on two bounded executors that mirror DBManager's ConnectionPool:
+ *  - writes (creating users, importing files, adding and updating runs) run one at a time, in the order they were
+ *    submitted, on a single writer thread, since SQLite allows only one writer; and
+ *  - reads run in parallel on one thread per reader connection.
+ *
+ * In ThreadMode#VIRTUAL, reads instead each get a thread of their own, and wait for one of a fixed number of permits
+ * (one per reader connection) before touching the database. With virtual threads, a waiting read costs little more
+ * than its stack, so many thousands of sessions can have queries outstanding at once without as many platform
+ * threads. The number of queries actually running against SQLite is the same in either mode.
+ *
+ * A future that is cancelled before its work starts never runs it. Once started, the work runs to completion and
+ * only its result is discarded. Failures complete the future exceptionally with the exception that was thrown.
+ */
+class AsyncDBManager {
+    /**
+     * The kind of threads reads are run on.
+     */
+    enum ThreadMode {
+        /**
+         * A fixed pool of platform threads, one per reader connection. Reads wait in the pool's queue.
+         */
+        PLATFORM,
+        /**
+         * A new virtual thread per read. Reads wait for a permit on their own thread. If the JVM does not support
+         * virtual threads, reads are run as in ThreadMode#PLATFORM, so that a waiting read never costs a platform
+         * thread of its own.
+         */
+        VIRTUAL
+    }
+
+    /**
+     * The database that all work is run against.
+     */
+    private final DBManager m_dbManager;
+    /**
+     * Runs every write, one at a time.
+     */
+    private final ExecutorService m_writeExecutor;
+    /**
+     * Runs reads, as many at once as there are reader connections.
+     */
+    private final ExecutorService m_readExecutor;
+    /**
+     * Limits the number of reads running at once to the number of reader connections, if reads are not already
+     * limited by the size of AsyncDBManager#m_readExecutor. \em null in ThreadMode#PLATFORM.
+     */
+    private final Semaphore m_readPermits;
+    /**
+     * True if reads are run on virtual threads.
+     */
+    private final boolean m_virtual;
+
+    /**
+     * Creates a facade that runs reads on platform threads.
+     *
+     * @param dbManager An initialized DBManager. See DBManager#init().
+     */
+    AsyncDBManager(final DBManager dbManager) {
+        this(dbManager, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * @param dbManager An initialized DBManager. See DBManager#init().
+     * @param mode The kind of threads reads are run on.
+     */
+    AsyncDBManager(final DBManager dbManager, final ThreadMode mode) {
+        final int readers = Math.max(dbManager.getReaderCount(), 1);
+
+        m_dbManager = dbManager;
+        m_writeExecutor = Executors.newSingleThreadExecutor(daemonThreads("db-writer"));
+
+        final ExecutorService virtualExecutor = mode == ThreadMode.VIRTUAL ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualExecutor != null) {
+            m_virtual = true;
+            m_readExecutor = virtualExecutor;
+            m_readPermits = new Semaphore(readers, true);
+        }
+        else {
+            m_virtual = false;
+            m_readExecutor = Executors.newFixedThreadPool(readers, daemonThreads("db-reader"));
+            m_readPermits = null;
+        }
+    }
+
+    /**
+     * @return True if reads are run on virtual threads, False if they are run on platform threads (including when
+     *         ThreadMode#VIRTUAL was asked for but the JVM does not support virtual threads).
+     */
+    boolean isVirtual() {
+        return m_virtual;
+    }
+
+    /**
+     * Authenticates a user, as User#User(DBManager, String, String) does.
+     *
+     * @return A future of the authenticated user. It completes exceptionally with
+     *         java.util.NoSuchElementException if no user has the email address, or with
+     *         javax.naming.AuthenticationException if the password is wrong.
+     */
+    CompletableFuture<User> login(final String emailAddress, final String password) {
+        return read(() -> new User(m_dbManager, emailAddress, password));
+    }
+
+    /**
+     * Creates a user, as User#createUser() does.
+     *
+     * @return A future that completes once the user has been added.
+     */
+    CompletableFuture<Void> createUser(final String name, final String emailAddress, final Date dateOfBirth,
+                                       final User.Sex sex, final float height, final float weight,
+                                       final String password) {
+        return write(() -> {
+            User.createUser(m_dbManager, name, emailAddress, dateOfBirth, sex, height, weight, password);
+            return null;
+        });
+    }
+
+    /**
+     * @see DBManager#userExists(String)
+     */
+    CompletableFuture<Boolean> userExists(final String emailAddress) {
+        return read(() -> m_dbManager.userExists(emailAddress));
+    }
+
+    /**
+     * @see DBManager#getUserProfile(String)
+     */
+    CompletableFuture<UserProfile> getUserProfile(final String emailAddress) {
+        return read(() -> m_dbManager.getUserProfile(emailAddress));
+    }
+
+    /**
+     * @see DBManager#loadRuns(int, Date, Date)
+     */
+    CompletableFuture<Vector<Run>> loadRuns(final int userID, final Date startDate, final Date endDate) {
+        return read(() -> m_dbManager.loadRuns(userID, startDate, endDate));
+    }
+
+    /**
+     * @see DBManager#loadRunColumns(int, Date, Date)
+     */
+    CompletableFuture<RunColumns> loadRunColumns(final int userID, final Date startDate, final Date endDate) {
+        return read(() -> m_dbManager.loadRunColumns(userID, startDate, endDate));
+    }
+
+    /**
+     * @see DBManager#countRuns(int, Date, Date)
+     */
+    CompletableFuture<Integer> countRuns(final int userID, final Date startDate, final Date endDate) {
+        return read(() -> m_dbManager.countRuns(userID, startDate, endDate));
+    }
+
+    /**
+     * @see DBManager#loadRunPage(int, Date, Date, RunKey, int)
+     */
+    CompletableFuture<RunColumns> loadRunPage(final int userID, final Date startDate, final Date endDate,
+                                              final RunKey first, final int limit) {
+        return read(() -> m_dbManager.loadRunPage(userID, startDate, endDate, first, limit));
+    }
+
+    /**
+     * @see DBManager#getRunStats(int, Date, Date)
+     */
+    CompletableFuture<RunStats> getRunStats(final int userID, final Date startDate, final Date endDate) {
+        return read(() -> m_dbManager.getRunStats(userID, startDate, endDate));
+    }
+
+    /**
+     * @see DBManager#getRolledUpRunStats(int, Date, Date)
+     */
+    CompletableFuture<RunStats> getRolledUpRunStats(final int userID, final Date startDate, final Date endDate) {
+        return read(() -> m_dbManager.getRolledUpRunStats(userID, startDate, endDate));
+    }
+
+    /**
+     * Imports a file of data points for a user, as Run#bulkImport() does.
+     *
+     * @return A future that completes once the file has been imported, or exceptionally with the
+     *         java.io.IOException that stopped it.
+     */
+    CompletableFuture<Void> importFile(final User user, final String filePath) {
+        return write(() -> {
+            Run.bulkImport(m_dbManager, user, filePath);
+            return null;
+        });
+    }
+
+    /**
+     * @see DBManager#newRun(int, Date, float, float, float, float)
+     */
+    CompletableFuture<Integer> newRun(final int userID, final Date date, final float duration, final float distance,
+                                      final float altitudeAscended, final float altitudeDescended) {
+        return write(() -> m_dbManager.newRun(userID, date, duration, distance, altitudeAscended,
+                altitudeDescended));
+    }
+
+    /**
+     * @see DBManager#setRun(int, float, float, float, float)
+     */
+    CompletableFuture<Void> setRun(final int rID, final float duration, final float distance,
+                                   final float altitudeAscended, final float altitudeDescended) {
+        return write(() -> {
+            m_dbManager.setRun(rID, duration, distance, altitudeAscended, altitudeDescended);
+            return null;
+        });
+    }
+
+    /**
+     * Stops accepting work. Work that has already been submitted still runs. The DBManager is not closed.
+     */
+    void shutdown() {
+        m_writeExecutor.shutdown();
+        m_readExecutor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> read(final Callable<T> work) {
+        return submit(m_readExecutor, m_readPermits, work);
+    }
+
+    private <T> CompletableFuture<T> write(final Callable<T> work) {
+        return submit(m_writeExecutor, null, work);
+    }
+
+    /**
+     * Runs \em work on \em executor and completes the returned future with its result, unless the future has been
+     * completed (\em i.e., cancelled) before the work starts.
+     *
+     * @param permits If not \em null, a permit is held while the work runs.
+     */
+    private static <T> CompletableFuture<T> submit(final Executor executor, final Semaphore permits,
+                                                   final Callable<T> work) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                if (permits == null) {
+                    future.complete(work.call());
+                    return;
+                }
+
+                permits.acquire();
+                try {
+                    // The future may have been cancelled while waiting for the permit
+                    if (!future.isDone()) {
+                        future.complete(work.call());
+                    }
+                }
+                finally {
+                    permits.release();
+                }
+            }
+            catch (final Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Looks up Executors#newVirtualThreadPerTaskExecutor() reflectively, so that the application still builds and
+     * runs on JVMs that predate virtual threads.
+     *
+     * @return An executor that starts a new virtual thread for each task, or \em null if the JVM has none.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (final ReflectiveOperationException | UnsupportedOperationException e) {
+            System.err.println("Virtual threads are not available; using platform threads.");
+            return null;
+        }
+    }
+
+    /**
+     * @return A factory of daemon threads named \em name-1, \em name-2, \em etc., so that pending work does not keep
+     *         the application alive.
+     */
+    private static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            final Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package com.activitytracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares AsyncDBManager's thread modes under many concurrent sessions.
+ *
+ * A temporary database is filled with a few years of runs. Then, for each ThreadMode, a number of sessions are
+ * started at once. Each session issues a sequence of queries (a count of runs followed by the statistics for the same
+ * range, as a click of the Go button does), each one started when the previous one completes. The wall time,
+ * throughput, query latency and peak number of live threads are printed for each mode.
+ *
+ * Usage: \em AsyncDBManagerBenchmark [\em sessions [\em queriesPerSession [\em readers]]]
+ */
+class AsyncDBManagerBenchmark {
+    /**
+     * The number of runs in the benchmark database.
+     */
+    private static final int RUN_COUNT = 20000;
+    /**
+     * The number of days the runs are spread over.
+     */
+    private static final int DAYS = 3 * 365;
+    private static final long MS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    public static void main(final String[] args) throws IOException {
+        final int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final int queriesPerSession = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final int readers = args.length > 2 ? Integer.parseInt(args[2]) : DBManager.DEFAULT_READER_COUNT;
+
+        final File dbFile = File.createTempFile("benchmark", ".db");
+        // Every session repeats the same ranges in each mode, so the RunCache would answer most queries
+        final DBManager dbManager = new DBManager(0, 0);
+        if (!dbManager.init(dbFile.getAbsolutePath(), readers)) {
+            System.err.println("Failed to initialize DBManager");
+            System.exit(1);
+        }
+
+        try {
+            final int userID = fill(dbManager);
+
+            for (final AsyncDBManager.ThreadMode mode : AsyncDBManager.ThreadMode.values()) {
+                final AsyncDBManager asyncDBManager = new AsyncDBManager(dbManager, mode);
+                // Warm up, so that neither mode pays for class loading or statement preparation
+                run(asyncDBManager, userID, Math.min(sessions, 100), queriesPerSession);
+
+                final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                threads.resetPeakThreadCount();
+                final long start = System.nanoTime();
+                final long[] latencies = run(asyncDBManager, userID, sessions, queriesPerSession);
+                final double seconds = (System.nanoTime() - start) / 1e9;
+
+                Arrays.sort(latencies);
+                System.out.printf("%-8s %s threads: %d sessions x %d queries in %.2f s (%.0f queries/s), "
+                                + "latency p50 %.2f ms, p99 %.2f ms, peak live threads %d%n",
+                        mode, asyncDBManager.isVirtual() ? "virtual" : "platform", sessions, queriesPerSession,
+                        seconds, latencies.length / seconds, percentile(latencies, 0.5) / 1e6,
+                        percentile(latencies, 0.99) / 1e6, threads.getPeakThreadCount());
+
+                asyncDBManager.shutdown();
+            }
+        }
+        finally {
+            dbManager.close();
+            new File(dbFile.getAbsolutePath() + "-wal").delete();
+            new File(dbFile.getAbsolutePath() + "-shm").delete();
+            dbFile.delete();
+        }
+    }
+
+    /**
+     * Creates a user and RUN_COUNT runs for them.
+     *
+     * @return The new user's ID.
+     */
+    private static int fill(final DBManager dbManager) {
+        User.createUser(dbManager, "Bench Mark", "benchmark@example.com", new Date(0), User.Sex.FEMALE, 1.7f, 60.0f,
+                "benchmark");
+        final int userID = dbManager.getUserProfile("benchmark@example.com").id;
+
+        final Random random = new Random(1);
+        dbManager.beginTransaction();
+        for (int i = 0; i < RUN_COUNT; ++i) {
+            dbManager.addNewRunToBatch(userID, new Date(random.nextInt(DAYS) * MS_PER_DAY),
+                    600 + random.nextFloat() * 3600, 1000 + random.nextFloat() * 15000, random.nextFloat() * 200,
+                    random.nextFloat() * 200);
+        }
+        dbManager.executeNewRunBatch();
+        dbManager.commitTransaction();
+        dbManager.endTransaction();
+        return userID;
+    }
+
+    /**
+     * Runs \em sessions sessions at once and waits for all of them to finish.
+     *
+     * @return The latency of every query, in nanoseconds.
+     */
+    private static long[] run(final AsyncDBManager asyncDBManager, final int userID, final int sessions,
+                              final int queriesPerSession) {
+        final long[] latencies = new long[sessions * queriesPerSession];
+        final CompletableFuture<?>[] done = new CompletableFuture<?>[sessions];
+
+        for (int s = 0; s < sessions; ++s) {
+            final Random random = new Random(s);
+            CompletableFuture<?> session = CompletableFuture.completedFuture(null);
+            for (int q = 0; q < queriesPerSession; ++q) {
+                final int slot = s * queriesPerSession + q;
+                final long startDay = random.nextInt(DAYS);
+                final Date start = new Date(startDay * MS_PER_DAY);
+                final Date end = new Date((startDay + 1 + random.nextInt(90)) * MS_PER_DAY);
+
+                session = session.thenCompose(previous -> {
+                    final long queryStart = System.nanoTime();
+                    return asyncDBManager.countRuns(userID, start, end)
+                            .thenCompose(count -> asyncDBManager.getRolledUpRunStats(userID, start, end))
+                            .thenAccept(stats -> latencies[slot] = System.nanoTime() - queryStart);
+                });
+            }
+            done[s] = session;
+        }
+
+        CompletableFuture.allOf(done).join();
+        return latencies;
+    }
+
+    private static long percentile(final long[] sorted, final double q) {
+        return sorted[Math.min(sorted.length - 1, (int) (q * sorted.length))];
+    }
+}
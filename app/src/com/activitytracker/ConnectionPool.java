@@ -0,0 +1,282 @@
+package com.activitytracker;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A small pool of connections to one SQLite database: a single writer connection and a fixed number of reader
+ * connections.
+ *
+ * SQLite allows only one writer at a time, and a JDBC connection must not be used by more than one thread at a
+ * time. The pool therefore guards the writer with a lock, so that writes (and whole transactions) are serialized,
+ * and hands each reader to one thread at a time. The database is put in write-ahead logging (WAL) mode, in which
+ * readers see the last committed state of the database and are never blocked by the writer, so queries can run
+ * while a long import is in progress.
+ *
+ * Each connection has its own StatementCache. Connections are borrowed as a Lease in a try-with-resources block:
+ * \code
+ * try (ConnectionPool.Lease lease = m_pool.read()) {
+ *     PreparedStatement stmt = lease.prepare(sqlQuery);
+ *     ...
+ * }
+ * \endcode
+ *
+ * A thread that holds the writer (\em e.g., inside a transaction) is given the writer for its reads as well, so that
+ * it sees its own uncommitted changes.
+ */
+class ConnectionPool {
+    /**
+     * A connection borrowed from the pool. Closing the lease returns the connection to the pool.
+     */
+    static class Lease implements AutoCloseable {
+        /**
+         * The pool the connection was borrowed from.
+         */
+        private final ConnectionPool pool;
+        /**
+         * The borrowed connection's statements.
+         */
+        private final StatementCache statements;
+        /**
+         * True if the lease holds the writer lock, False if it holds a reader (or reuses a writer lock that the
+         * thread already held).
+         */
+        private final boolean writer;
+
+        private Lease(final ConnectionPool pool, final StatementCache statements, final boolean writer) {
+            this.pool = pool;
+            this.statements = statements;
+            this.writer = writer;
+        }
+
+        /**
+         * @see StatementCache#prepare(String)
+         */
+        PreparedStatement prepare(final String sqlQuery) throws SQLException {
+            return statements.prepare(sqlQuery);
+        }
+
+        /**
+         * @see StatementCache#prepareInsert(String)
+         */
+        PreparedStatement prepareInsert(final String sqlQuery) throws SQLException {
+            return statements.prepareInsert(sqlQuery);
+        }
+
+        /**
+         * @return The borrowed connection.
+         */
+        Connection connection() {
+            return statements.connection();
+        }
+
+        @Override
+        public void close() {
+            pool.release(this);
+        }
+    }
+
+    /**
+     * The statements (and connection) used for every write.
+     */
+    private final StatementCache m_writer;
+    /**
+     * Serializes use of the writer connection. Held for the duration of a write, or of a whole transaction.
+     */
+    private final ReentrantLock m_writerLock = new ReentrantLock();
+    /**
+     * The reader connections that are not currently borrowed.
+     */
+    private final BlockingQueue<StatementCache> m_idleReaders;
+    /**
+     * Every reader connection, borrowed or not.
+     */
+    private final List<StatementCache> m_readers = new ArrayList<>();
+
+    /**
+     * Opens the writer and \em readerCount reader connections to a database, and puts the database in WAL mode.
+     *
+     * @param dbURL A file system path to the SQLite database file.
+     * @param readerCount The number of reader connections to open. If this is \em 0, or the database is in-memory
+     *                    (and hence cannot be shared between connections), every query uses the writer.
+     *
+     * @throws SQLException Thrown if a connection cannot be opened.
+     */
+    ConnectionPool(final String dbURL, final int readerCount) throws SQLException {
+        final String url = "jdbc:sqlite:" + dbURL;
+        final boolean inMemory = dbURL.isEmpty() || dbURL.startsWith(":memory:");
+        final int readers = inMemory ? 0 : Math.max(readerCount, 0);
+
+        m_writer = new StatementCache(DriverManager.getConnection(url));
+        m_idleReaders = new ArrayBlockingQueue<>(Math.max(readers, 1));
+
+        try {
+            if (!inMemory) {
+                pragma(m_writer.connection(), "journal_mode = WAL");
+            }
+
+            for (int i = 0; i < readers; ++i) {
+                final Connection conn = DriverManager.getConnection(url);
+                final StatementCache reader = new StatementCache(conn);
+                m_readers.add(reader);
+                pragma(conn, "query_only = true");
+                m_idleReaders.add(reader);
+            }
+        }
+        catch (final SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Borrows a connection for reading. Blocks until a reader is available.
+     *
+     * If the calling thread holds the writer, or the pool has no readers, the writer is used.
+     *
+     * @return A lease that must be closed when the read is complete.
+     */
+    Lease read() {
+        if (m_writerLock.isHeldByCurrentThread()) {
+            return new Lease(this, m_writer, false);
+        }
+        if (m_readers.isEmpty()) {
+            return write();
+        }
+
+        try {
+            return new Lease(this, m_idleReaders.take(), false);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a database connection.", e);
+        }
+    }
+
+    /**
+     * Borrows the writer connection, blocking until no other thread is using it.
+     *
+     * @return A lease that must be closed when the write is complete.
+     */
+    Lease write() {
+        m_writerLock.lock();
+        return new Lease(this, m_writer, true);
+    }
+
+    /**
+     * Acquires the writer lock and keeps it until ConnectionPool#unlockWriter() is called. Used to hold the writer
+     * for the duration of a transaction. May be called more than once by the same thread.
+     */
+    void lockWriter() {
+        m_writerLock.lock();
+    }
+
+    /**
+     * Releases one hold of the writer lock acquired with ConnectionPool#lockWriter().
+     */
+    void unlockWriter() {
+        m_writerLock.unlock();
+    }
+
+    /**
+     * @return True if the calling thread holds the writer lock, \em e.g., inside a transaction.
+     */
+    boolean holdsWriter() {
+        return m_writerLock.isHeldByCurrentThread();
+    }
+
+    /**
+     * @return The writer connection. The calling thread must hold the writer lock.
+     */
+    Connection writerConnection() {
+        if (!m_writerLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("The writer connection is held by another thread.");
+        }
+        return m_writer.connection();
+    }
+
+    /**
+     * @return The number of reader connections in the pool.
+     */
+    int readerCount() {
+        return m_readers.size();
+    }
+
+    /**
+     * @return The number of prepared statements held open across every connection in the pool.
+     */
+    int openStatements() {
+        int count = m_writer.openStatements();
+        for (final StatementCache reader : m_readers) {
+            count += reader.openStatements();
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of statement cache hits across every connection in the pool.
+     */
+    long hits() {
+        long count = m_writer.hits();
+        for (final StatementCache reader : m_readers) {
+            count += reader.hits();
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of statement cache misses across every connection in the pool.
+     */
+    long misses() {
+        long count = m_writer.misses();
+        for (final StatementCache reader : m_readers) {
+            count += reader.misses();
+        }
+        return count;
+    }
+
+    /**
+     * Closes every statement and connection in the pool. The pool must not be used afterwards.
+     */
+    void close() {
+        closeQuietly(m_writer);
+        for (final StatementCache reader : m_readers) {
+            closeQuietly(reader);
+        }
+        m_readers.clear();
+        m_idleReaders.clear();
+    }
+
+    private void release(final Lease lease) {
+        if (lease.writer) {
+            m_writerLock.unlock();
+        }
+        else if (lease.statements != m_writer) {
+            m_idleReaders.add(lease.statements);
+        }
+    }
+
+    private static void pragma(final Connection conn, final String pragma) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA " + pragma);
+        }
+    }
+
+    private static void closeQuietly(final StatementCache statements) {
+        statements.close();
+        try {
+            statements.connection().close();
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
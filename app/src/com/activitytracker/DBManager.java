@@ -5,7 +5,9 @@ import java.sql.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Vector;
 
 /**
@@ -26,15 +28,113 @@ import java.util.Vector;
  *
  * Polymorphism could theoretically be used here to simply have a return type of Object, however this is not
  * flexible and requires casting \em all returned data to the correct type in the invoking method.
+ *
+ * The one exception to the above is on hot paths where an object would otherwise issue a query per attribute for
+ * each of many rows (\em e.g., listing a user's whole run history). There we provide set-based loaders, such as
+ * DBManager#loadRuns(), which read whole rows in one query and pass them to the object's constructor.
  */
 class DBManager {
     /**
-     * The \em m_conn variable in the DBManager class is initially assigned the value of \em null.
+     * The number of reader connections opened by DBManager#init() when none is specified.
+     */
+    static final int DEFAULT_READER_COUNT = 4;
+
+    /**
+     * The \em m_pool variable in the DBManager class is initially assigned the value of \em null.
+     *
+     * When DBManager#init() is invoked, it is made to be the pool of connections to the database: one writer
+     * connection and a number of reader connections. Every method in this class borrows a connection from it, reads
+     * with DBManager#m_pool.read() and writes with DBManager#m_pool.write(), so that the application's threads (the
+     * event dispatch thread, import workers, \em etc.) never share a connection. Each connection keeps its own cache
+     * of prepared statements, so that each distinct SQL statement is compiled only once per connection.
+     */
+    private ConnectionPool m_pool = null;
+    /**
+     * The runs and range query results read recently, so that repeated reads (\em e.g., each refresh of the main
+     * window's table) do not query the database again. Every write to the Runs table made through this DBManager
+     * invalidates the entries that it affects. See RunCache.
+     */
+    private final RunCache m_runCache;
+    /**
+     * The samples of each run queued by DBManager#addNewRunToBatch(), encoded by RunSampleCodec (or \em null if they
+     * are not known), in the order the runs were queued. They are stored by DBManager#executeNewRunBatch() once the
+     * runs' IDs are known. Only used by the thread holding the writer.
+     */
+    private final List<byte[]> m_batchSamples = new ArrayList<>();
+    /**
+     * The schema migrations, in the order they are applied by DBManager#migrate().
+     *
+     * Each element holds the SQL statements of one migration, and its position in the array (plus one) is the schema
+     * version that a database has once it has been applied. Migrations that have been released must never be edited
+     * or reordered; changes to the schema are made by appending a new migration.
+     */
+    private static final String[][] MIGRATIONS = {
+            // 1: Lets the run range queries in getRuns() and loadRuns() seek to a user's runs within a date range
+            //    instead of scanning the table. As SQLite indexes always carry the row ID, the index also covers
+            //    getRuns().
+            {
+                    "CREATE INDEX IF NOT EXISTS runs_user_date ON Runs (user_id, date)"
+            },
+            // 2: Daily, weekly and monthly totals of each user's runs, kept up to date by every write to Runs. The
+            //    rows for existing runs are filled in by DBManager#backfillRunRollups().
+            {
+                    RunRollups.SQL_CREATE_TABLE
+            },
+            // 3: The data points of each run, numbered from 0 in the order they were recorded. See RunSamples.
+            {
+                    "CREATE TABLE IF NOT EXISTS RunSamples (" +
+                    "    run_id   INTEGER NOT NULL REFERENCES Runs (id)," +
+                    "    seq      INTEGER NOT NULL," +
+                    "    elapsed  REAL    NOT NULL," + // seconds
+                    "    distance REAL    NOT NULL," + // metres
+                    "    altitude REAL    NOT NULL," + // metres, relative to the start of the run
+                    "    PRIMARY KEY (run_id, seq)" +
+                    ") WITHOUT ROWID"
+            },
+            // 4: Each run's samples, compressed into a single value by RunSampleCodec. See
+            //    DBManager#loadRunSamples(). They are kept out of the Runs table so that queries that scan runs
+            //    (totals, statistics, pages of the run table) do not read them.
+            {
+                    "CREATE TABLE IF NOT EXISTS RunSampleBlobs (" +
+                    "    run_id  INTEGER PRIMARY KEY REFERENCES Runs (id)," +
+                    "    samples BLOB    NOT NULL" +
+                    ")"
+            }
+    };
+    /**
+     * The schema version that introduces the RunRollups table, after which DBManager#migrate() fills the table in
+     * from the existing runs.
+     */
+    private static final int ROLLUPS_SCHEMA_VERSION = 2;
+    /**
+     * The statement used to queue new runs in DBManager#addNewRunToBatch().
      *
-     * When DBManager#init() is invoked, it is made to be the connection to the database and is subsequently used
-     * each time a new SQL statement is created.
+     * This is kept distinct from the SQL used by DBManager#newRun() so that a single insert never executes a
+     * partially filled batch.
+     */
+    private static final String SQL_BATCH_NEW_RUN = "INSERT INTO Runs " +
+            "(user_id, date, duration, distance, altitude_ascended, altitude_descended) VALUES (?, ?, ?, ?, ?, ?)";
+    /**
+     * The statement used to store the samples of the runs queued by DBManager#addNewRunToBatch(), once the runs
+     * have been inserted and their IDs are known.
+     */
+    private static final String SQL_BATCH_RUN_SAMPLES = "INSERT INTO RunSampleBlobs (run_id, samples) VALUES (?, ?)";
+    /**
+     * The statement used to queue rollup changes alongside DBManager#SQL_BATCH_NEW_RUN. As with that statement, it
+     * is kept distinct from the one used for single writes (the comment is enough to give it its own cache entry).
+     */
+    private static final String SQL_BATCH_ROLLUP = RunRollups.SQL_UPSERT + " /* batch */";
+    /**
+     * The query used by DBManager#getRolledUpRunStats(): the totals of the rollup buckets in each range of a
+     * RunRollups.Plan, plus those of the runs in its partial ranges.
+     */
+    private static final String SQL_ROLLED_UP_STATS = buildRolledUpStatsQuery();
+    /**
+     * The query that reads a run's row, used by DBManager#getRunSummary() and, for the old
+     * values, by DBManager#setRun().
      */
-    private Connection m_conn = null;
+    private static final String SQL_RUN_SUMMARY = "SELECT user_id, date, duration, distance, altitude_ascended, " +
+            "altitude_descended FROM Runs WHERE id=?";
 
     /**
      *  Creates a new DBManager object.
@@ -43,8 +143,23 @@ class DBManager {
      *
      *  This constructor takes no parameters as verification of the SQLite database is done in the init() method of this
      *  class, which returns information about whether the initialization was successful or not.
+     *
+     *  Runs and range query results are cached in a RunCache of RunCache#DEFAULT_MAX_ENTRIES entries and
+     *  RunCache#DEFAULT_MAX_BYTES bytes.
      */
     DBManager() {
+        this(RunCache.DEFAULT_MAX_ENTRIES, RunCache.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     *  Creates a new DBManager object, as DBManager() does, with a RunCache of the given size.
+     *
+     *  @param runCacheEntries The largest number of runs and range query results to cache. If this is \em 0, nothing
+     *                         is cached.
+     *  @param runCacheBytes The largest estimated size of the cached runs and range query results, in bytes.
+     */
+    DBManager(final int runCacheEntries, final long runCacheBytes) {
+        m_runCache = new RunCache(runCacheEntries, runCacheBytes);
     }
 
     /**
@@ -80,8 +195,8 @@ class DBManager {
             byte sexByte = sex.equals(User.Sex.MALE) ? (byte) 1 : (byte) 0;
             java.sql.Date currentTime = new java.sql.Date(System.currentTimeMillis());
 
-            try {
-                PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+            try (ConnectionPool.Lease lease = m_pool.write()) {
+                PreparedStatement stmt = lease.prepare(sqlQuery);
                 stmt.setString(1, emailAddress);
                 stmt.setString(2, name);
                 stmt.setLong(3, dateofBirth.getTime());
@@ -95,8 +210,6 @@ class DBManager {
                 if (stmt.executeUpdate() != 1) {
                     System.err.println("User not added to database.");
                 }
-
-                stmt.close();
             }
             catch (final SQLException e) {
                 System.err.println(e.getMessage());
@@ -121,13 +234,12 @@ class DBManager {
         String sqlQuery = "SELECT COUNT(*) AS count FROM Users WHERE `email_address`=?";
         boolean exists = false;
 
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
             stmt.setString(1, emailAddress);
-            ResultSet res = stmt.executeQuery();
-            exists = res.getInt("count") > 0;
-
-            stmt.close();
+            try (ResultSet res = stmt.executeQuery()) {
+                exists = res.next() && res.getInt("count") > 0;
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -150,15 +262,14 @@ class DBManager {
      */
     public int getUserIDByEmail(final String emailAddress) {
         int id = 0;
-        ResultSet res;
         String sqlQuery = "SELECT id FROM Users WHERE `email_address`=?";
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
             stmt.setString(1, emailAddress);
-            res =  stmt.executeQuery();
-            id = res.getInt("id");
-
-            stmt.close();
+            try (ResultSet res = stmt.executeQuery()) {
+                if (res.next())
+                    id = res.getInt("id");
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -167,6 +278,48 @@ class DBManager {
         return id;
     }
 
+    /**
+     * Retrieves a user's profile and credentials from the Users table in a single row read.
+     *
+     * This is used by the User constructor at login. Rather than checking existence, looking up the user's ID, and
+     * then querying each attribute separately, the whole row is read at once and the candidate password is
+     * compared against the hash and salt it contains.
+     *
+     * @param emailAddress The user's email address with which they authenticate.
+     *
+     * @return A UserProfile containing the user's row, or \em null if no user with email address \em emailAddress
+     *         exists (or the query fails).
+     */
+    public UserProfile getUserProfile(final String emailAddress) {
+        UserProfile profile = null;
+        String sqlQuery = "SELECT id, name, email_address, date_of_birth, sex, height, weight, " +
+                "password_hash, password_salt FROM Users WHERE `email_address`=?";
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
+            stmt.setString(1, emailAddress);
+            try (ResultSet res = stmt.executeQuery()) {
+                if (res.next()) {
+                    profile = new UserProfile(
+                            res.getInt("id"),
+                            res.getString("name"),
+                            res.getString("email_address"),
+                            new java.util.Date(res.getLong("date_of_birth")),
+                            res.getByte("sex") == (byte) 1 ? User.Sex.MALE : User.Sex.FEMALE,
+                            res.getFloat("height"),
+                            res.getFloat("weight"),
+                            res.getString("password_hash"),
+                            res.getBytes("password_salt")
+                    );
+                }
+            }
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+        }
+
+        return profile;
+    }
+
     /**
      * This method retrieves a string, varchar, text, or char field, when applicable, from the database's Users table.
      *
@@ -197,8 +350,7 @@ class DBManager {
      *         specified by the \em id parameter.
      */
     public String getUserStringAttribute(final UserAttribute attribute, final int id) {
-        String name;
-        ResultSet res;
+        String name = null;
         String sqlQuery, columnLabel;
         switch (attribute) {
             case PASSWORD:
@@ -216,13 +368,13 @@ class DBManager {
             default:
                 throw new AssertionError("Incorrect UserAttribute enumeration type passed to method.");
         }
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
             stmt.setInt(1, id);
-            res = stmt.executeQuery();
-            name = res.getString(columnLabel);
-
-            stmt.close();
+            try (ResultSet res = stmt.executeQuery()) {
+                if (res.next())
+                    name = res.getString(columnLabel);
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -251,8 +403,7 @@ class DBManager {
      *         specified by \em id.
      */
     public float getUserFloatAttribute(final UserAttribute attribute, final int id) {
-        float attrVal;
-        ResultSet res;
+        float attrVal = 0.0f;
         String sqlQuery, columnLabel;
         switch (attribute) {
             case WEIGHT:
@@ -266,13 +417,13 @@ class DBManager {
             default:
                 throw new AssertionError("Incorrect UserAttribute enumeration type passed to method.");
         }
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
             stmt.setInt(1, id);
-            res = stmt.executeQuery();
-            attrVal = res.getFloat(columnLabel);
-
-            stmt.close();
+            try (ResultSet res = stmt.executeQuery()) {
+                if (res.next())
+                    attrVal = res.getFloat(columnLabel);
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -293,21 +444,23 @@ class DBManager {
      */
     public Date getDateOfBirth(final int id) {
         Date DOB;
-        java.sql.Date DOBResult;
-        ResultSet res;
+        java.sql.Date DOBResult = null;
         String sqlQuery = "SELECT date_of_birth FROM Users WHERE id=?";
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
             stmt.setInt(1, id);
-            res = stmt.executeQuery();
-            DOBResult = res.getDate("date_of_birth");
-
-            stmt.close();
+            try (ResultSet res = stmt.executeQuery()) {
+                if (res.next())
+                    DOBResult = res.getDate("date_of_birth");
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
             return null;
         }
+        if (DOBResult == null) {
+            return null;
+        }
         DOB = new Date(DOBResult.getYear(), DOBResult.getMonth(), DOBResult.getDay());
 
         return DOB;
@@ -327,16 +480,16 @@ class DBManager {
      * @return This method returns a User.Sex enumeration type corresponding to the user's gender.
      */
     public User.Sex getUserSex(final int id) {
-        byte sex;
-        ResultSet res;
+        byte sex = 0;
         String sqlQuery = "SELECT sex FROM Users WHERE id=?";
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
             stmt.setInt(1, id);
-            res = stmt.executeQuery();
-            sex = res.getByte("sex");
-
-            stmt.close();
+            try (ResultSet res = stmt.executeQuery()) {
+                if (!res.next())
+                    return null;
+                sex = res.getByte("sex");
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -360,15 +513,15 @@ class DBManager {
      * @return This method returns a byte array containing the user's password encryption salt.
      */
     public byte[] getUserPassSalt(final int id) {
-        byte[] passSalt;
-        ResultSet res;
+        byte[] passSalt = null;
         String sqlQuery = "SELECT password_salt FROM Users WHERE id=?";
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
             stmt.setInt(1, id);
-            res = stmt.executeQuery();
-            passSalt = res.getBytes("password_salt");
-            stmt.close();
+            try (ResultSet res = stmt.executeQuery()) {
+                if (res.next())
+                    passSalt = res.getBytes("password_salt");
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -390,15 +543,15 @@ class DBManager {
      */
     public int getUserLastRID(final int id) {
         int rID = 0;
-        ResultSet res;
         String columnLabel = "last_run";
         String sqlQuery = "SELECT " + columnLabel + " FROM Users WHERE id=?";
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
             stmt.setInt(1, id);
-            res = stmt.executeQuery();
-            rID = res.getInt(columnLabel);
-            stmt.close();
+            try (ResultSet res = stmt.executeQuery()) {
+                if (res.next())
+                    rID = res.getInt(columnLabel);
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -418,20 +571,26 @@ class DBManager {
      *
      * @param id Unique ID used to associate information in the database to this user.
      * @param lastRID Integer corresponding to the last row in the Workouts table that the user with ID \em id created.
+     *
+     * @return True if the user's last run was updated, False otherwise.
      */
-    public void setUserLastRID(final int id, final int lastRID) {
+    public boolean setUserLastRID(final int id, final int lastRID) {
         String sqlQuery = "UPDATE Users SET last_run=? WHERE id=?";
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
+        try (ConnectionPool.Lease lease = m_pool.write()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
             stmt.setInt(1, lastRID);
             stmt.setInt(2, id);
             if (stmt.executeUpdate() != 1) {
                 System.err.println("User's last run was not updated correctly.");
+                return false;
             }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
+            return false;
         }
+
+        return true;
     }
 
     /**
@@ -447,14 +606,17 @@ class DBManager {
      * @param altitudeAscended Cumulative altitude climbed in metres.
      * @param altitudeDescended Cumulative altitude descended in metres.
      *
+     * The user's daily, weekly and monthly totals in the RunRollups table are updated in the same transaction, and
+     * the user's cached range query results that include \em date are invalidated (see RunCache).
+     *
      * @return Returns a unique integer corresponding to the new row in the SQLite Workouts table by which the new
-     *         entry can be identified.
+     *         entry can be identified. This is the key generated by SQLite for the row, so no search of the table is
+     *         required to find it. If the row could not be added, \em 0 is returned.
      */
     public int newRun(final int userID, final java.util.Date date, final float duration, final float distance,
                       final float altitudeAscended, final float altitudeDescended) {
 
         int rID = 0;
-        ResultSet res;
         String sqlInsertQuery = "INSERT INTO Runs (" +
                 "user_id," +
                 "date," +
@@ -463,41 +625,42 @@ class DBManager {
                 "altitude_ascended," +
                 "altitude_descended" +
                 ") VALUES (?, ?, ?, ?, ?, ?)";
-        String sqlSelectQuery = "SELECT id FROM Runs WHERE " +
-                "user_id=? AND " +
-                "date=? AND " +
-                "duration=? AND " +
-                "distance=? AND " +
-                "altitude_ascended=? AND " +
-                "altitude_descended=?";
-
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlInsertQuery);
-            stmt.setInt(1, userID);
-            stmt.setLong(2, date.getTime());
-            stmt.setFloat(3, duration);
-            stmt.setFloat(4, distance);
-            stmt.setFloat(5, altitudeAscended);
-            stmt.setFloat(6, altitudeDescended);
 
-            if (stmt.executeUpdate() != 1) {
-                System.err.println("Run not added to database.");
-            }
+        try (ConnectionPool.Lease lease = m_pool.write()) {
+            final boolean ownTransaction = beginAtomicWrite(lease);
+            try {
+                PreparedStatement stmt = lease.prepareInsert(sqlInsertQuery);
+                stmt.setInt(1, userID);
+                stmt.setLong(2, date.getTime());
+                stmt.setFloat(3, duration);
+                stmt.setFloat(4, distance);
+                stmt.setFloat(5, altitudeAscended);
+                stmt.setFloat(6, altitudeDescended);
 
-            stmt.close();
+                if (stmt.executeUpdate() != 1) {
+                    System.err.println("Run not added to database.");
+                    return rID;
+                }
 
-            // Pass back in the stuff we just created to get the right row ID
-            // Look at a better way of doing this with OUTPUT clause of INPUT statement
-            stmt = m_conn.prepareStatement(sqlSelectQuery);
-            stmt.setInt(1, userID);
-            stmt.setLong(2, date.getTime());
-            stmt.setFloat(3, duration);
-            stmt.setFloat(4, distance);
-            stmt.setFloat(5, altitudeAscended);
-            stmt.setFloat(6, altitudeDescended);
+                // The new row's ID is the key SQLite generated for it
+                try (ResultSet res = stmt.getGeneratedKeys()) {
+                    if (res.next())
+                        rID = res.getInt(1);
+                }
 
-            res = stmt.executeQuery();
-            rID = res.getInt("id");
+                if (rID != 0) {
+                    m_runCache.invalidateRun(userID, date.getTime());
+                    updateRollups(lease.prepare(RunRollups.SQL_UPSERT), false, userID, date.getTime(),
+                            RunRollups.contribution(duration, distance, altitudeAscended, altitudeDescended));
+                }
+            }
+            catch (final SQLException e) {
+                rID = 0;
+                throw e;
+            }
+            finally {
+                endAtomicWrite(lease, ownTransaction, rID != 0);
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -517,6 +680,10 @@ class DBManager {
      * values for \em duration, \em distance, and \em altitude --- here we just take the input and put it in the
      * database.
      *
+     * The user's daily, weekly and monthly totals in the RunRollups table are updated by the difference between the
+     * old and new values in the same transaction. The run's cached row and the user's cached range query results that
+     * include the run are invalidated (see RunCache).
+     *
      * @param rID Unique ID used to identify a run in the database.
      * @param duration The number of seconds the user's run lasted.
      * @param distance The cumulative number of metres the user ran.
@@ -531,21 +698,51 @@ class DBManager {
                 "altitude_ascended=?, " +
                 "altitude_descended=? " +
                 "WHERE id=? ";
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
-            stmt.setFloat(1, duration);
-            stmt.setFloat(2, distance);
-            stmt.setFloat(3, altitudeAscended);
-            stmt.setFloat(4, altitudeDescended);
-            stmt.setInt(5, rID);
+        try (ConnectionPool.Lease lease = m_pool.write()) {
+            final boolean ownTransaction = beginAtomicWrite(lease);
+            boolean success = false;
+            try {
+                // The rollups need the values being replaced
+                PreparedStatement stmt = lease.prepare(SQL_RUN_SUMMARY);
+                stmt.setInt(1, rID);
+                final int userID;
+                final long date;
+                final double[] oldContribution;
+                try (ResultSet res = stmt.executeQuery()) {
+                    if (!res.next()) {
+                        System.err.println("Run not updated in database.");
+                        return;
+                    }
+                    userID = res.getInt(1);
+                    date = res.getLong(2);
+                    oldContribution = RunRollups.contribution(res.getFloat(3), res.getFloat(4), res.getFloat(5),
+                            res.getFloat(6));
+                }
 
-            int result = stmt.executeUpdate();
-            System.err.println(Integer.toString(result) + " rows updated in setRun().");
-            if (result != 1) {
-                System.err.println("Run not updated in database.");
-            }
+                stmt = lease.prepare(sqlQuery);
+                stmt.setFloat(1, duration);
+                stmt.setFloat(2, distance);
+                stmt.setFloat(3, altitudeAscended);
+                stmt.setFloat(4, altitudeDescended);
+                stmt.setInt(5, rID);
+
+                int result = stmt.executeUpdate();
+                System.err.println(Integer.toString(result) + " rows updated in setRun().");
+                if (result != 1) {
+                    System.err.println("Run not updated in database.");
+                    return;
+                }
+                m_runCache.invalidateSummary(rID);
+                m_runCache.invalidateRun(userID, date);
 
-            stmt.close();
+                updateRollups(lease.prepare(RunRollups.SQL_UPSERT), false, userID, date, RunRollups.add(
+                        RunRollups.contribution(duration, distance, altitudeAscended, altitudeDescended),
+                        RunRollups.negate(oldContribution)));
+                success = true;
+            }
+            finally {
+                endAtomicWrite(lease, ownTransaction, success);
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -554,201 +751,1051 @@ class DBManager {
     }
 
     /**
-     * Retrieves a run's attribute as a floating point number, where applicable, from the database.
+     * Queues a new row for the Runs table, identical to the one added by DBManager#newRun(), to be sent to the
+     * database as part of a JDBC batch.
      *
-     * This method accepts a RunAttribute enumeration type to specify what attribute it is returning from the
-     * database. Only certain attributes are accepted by this method, namely those that are stored as real values.
-     * Attributes stored as other data types should use the appropriate accessor method.
+     * Queued rows are not visible to any query until DBManager#executeNewRunBatch() is called. This is intended to be
+     * used by RunImporter inside a transaction opened with DBManager#beginTransaction(), so that many completed runs
+     * can be written with a single round trip. The changes to the user's totals in the RunRollups table are queued
+     * alongside the row.
      *
-     * @param attribute \parblock
-     *    The attribute that the method is supposed to query the DB for and return the value of. Note that only certain
-     *    RunAttribute types are supported in this method.
-     *      - When \em attribute is RunAttribute.DURATION, the run's duration is returned.
-     *      - When \em attribute is RunAttribute.DISTANCE, the run's cumulative distance is returned in metres.
-     *      - When \em attribute is RunAttribute.ALTITUDE_ASCENDED, the run's cumulative altitude climbed is
-     *        returned in metres
-     *      - When \em attribute is RunAttribute.ALTITUDE_DESCENDED, the run's cumulative altitude descended is
-     *        returned in metres
-     *   \endparblock
-     * @param rID Unique ID corresponding to the row in the Runs table that we wish to query. If such an ID does
-     *             not exist, \em 0.0f will be returned.
+     * @param userID Unique ID used to associate information in the database to this user.
+     * @param date Date that the run was completed.
+     * @param duration Duration of the run in seconds.
+     * @param distance Distance ran in metres.
+     * @param altitudeAscended Cumulative altitude climbed in metres.
+     * @param altitudeDescended Cumulative altitude descended in metres.
      *
-     * @return This method returns a float containing run attribute as specified by the \em attribute parameter.
+     * @return True if the row was queued, False otherwise.
      */
-    public float getRunFloatAttribute(final RunAttribute attribute, final int rID) {
-        ResultSet res;
-        PreparedStatement stmt;
-        String sqlQuery, columnLabel;
-        float attrVal = 0.0f;
-        switch (attribute) {
-            case DURATION:
-                columnLabel = "duration";
-                sqlQuery = "SELECT " + columnLabel + " FROM Runs WHERE id=?";
-                break;
-            case DISTANCE:
-                columnLabel = "distance";
-                sqlQuery = "SELECT " + columnLabel + " FROM Runs WHERE id=?";
-                break;
-            case ALTITUDE_ASCENDED:
-                columnLabel = "altitude_ascended";
-                sqlQuery = "SELECT " + columnLabel + " FROM Runs WHERE id=?";
-                break;
-            case ALTITUDE_DESCENDED:
-                columnLabel = "altitude_descended";
-                sqlQuery = "SELECT " + columnLabel + " FROM Runs WHERE id=?";
-                break;
-            default:
-                return attrVal;
-        }
-        if (runExists(rID)) {
-            try {
-                stmt = m_conn.prepareStatement(sqlQuery);
-                stmt.setInt(1, rID);
-                res = stmt.executeQuery();
-                attrVal = res.getFloat(columnLabel);
-            }
-            catch (final SQLException e) {
-                System.err.println(e.getMessage());
-            }
-        }
-        else {
-            System.err.println("Run " + Integer.toString(rID) + " does not exist. Cannot get " + columnLabel + ".");
-        }
-
-        return attrVal;
-
+    public boolean addNewRunToBatch(final int userID, final java.util.Date date, final float duration,
+                                    final float distance, final float altitudeAscended,
+                                    final float altitudeDescended) {
+        return addNewRunToBatch(userID, date, duration, distance, altitudeAscended, altitudeDescended, null);
     }
 
     /**
-     * Retrieves a run's date from the database using its unique ID
+     * Queues a new row for the Runs table, as DBManager#addNewRunToBatch(int, Date, float, float, float, float)
+     * does, along with the run's samples.
      *
-     * @param runID Unique ID corresponding to the row in the Runs table that we wish to query.
+     * @param userID Unique ID used to associate information in the database to this user.
+     * @param date Date that the run was completed.
+     * @param duration Duration of the run in seconds.
+     * @param distance Distance ran in metres.
+     * @param altitudeAscended Cumulative altitude climbed in metres.
+     * @param altitudeDescended Cumulative altitude descended in metres.
+     * @param samples The run's samples, or \em null if they are not known. See DBManager#loadRunSamples().
+     *
+     * @return True if the row was queued, False otherwise.
      */
-    public java.util.Date getRunDate(final int runID) {
-        ResultSet res;
-        long fromEpoch;
-        java.util.Date date = null;
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement("SELECT date FROM Runs WHERE id=?");
-            stmt.setInt(1, runID);
-            res = stmt.executeQuery();
-            fromEpoch = res.getLong("date");
-            date = new java.util.Date(fromEpoch);
+    public boolean addNewRunToBatch(final int userID, final java.util.Date date, final float duration,
+                                    final float distance, final float altitudeAscended,
+                                    final float altitudeDescended, final RunSamples samples) {
+        try (ConnectionPool.Lease lease = m_pool.write()) {
+            PreparedStatement stmt = lease.prepareInsert(SQL_BATCH_NEW_RUN);
+            stmt.setInt(1, userID);
+            stmt.setLong(2, date.getTime());
+            stmt.setFloat(3, duration);
+            stmt.setFloat(4, distance);
+            stmt.setFloat(5, altitudeAscended);
+            stmt.setFloat(6, altitudeDescended);
+            stmt.addBatch();
+            m_batchSamples.add(samples == null ? null : RunSampleCodec.encode(samples));
+            m_runCache.invalidateRun(userID, date.getTime());
+
+            updateRollups(lease.prepare(SQL_BATCH_ROLLUP), true, userID, date.getTime(),
+                    RunRollups.contribution(duration, distance, altitudeAscended, altitudeDescended));
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
+            return false;
         }
 
-        return date;
+        return true;
     }
 
     /**
-     * Determines if a given run ID exists in the database.
+     * Sends every row queued by DBManager#addNewRunToBatch() to the database and returns the IDs they were given.
      *
-     * @param rID Unique ID corresponding to the row in the Runs table that we wish to check exists.
+     * SQLite only reports the key generated for the last row of a batch (\em i.e., \em last_insert_rowid()).
+     * However, the Runs table's keys are assigned in increasing order, and inside a transaction (see
+     * DBManager#beginTransaction()) no other connection can write between the rows of a batch. The rows therefore
+     * receive consecutive IDs ending in that key. This method must only be used inside a transaction.
      *
-     * @return This method returns True if the run row with ID \em WOID exists in the database, or False otherwise.
+     * @return An array containing the ID of each inserted row, in the order the rows were queued, or \em null if the
+     *         batch failed.
      */
-    public boolean runExists(final int rID) {
-        ResultSet res;
-        String sqlQuery = "SELECT COUNT(*) as count FROM Runs WHERE id=?";
-        boolean exists = false;
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(sqlQuery);
-            stmt.setInt(1, rID);
-            res = stmt.executeQuery();
-            switch (res.getInt("count")) {
-                case 0:
-                    exists = false;
-                    break;
-                case 1:
-                    exists = true;
-                    break;
-                default:
-                    exists = true;
-                    System.err.println("More than one run for ID " +
-                            Integer.toString(rID) + ". Something isn't right.");
-                    break;
-            }
+    public int[] executeNewRunBatch() {
+        try (ConnectionPool.Lease lease = m_pool.write()) {
+            try {
+                PreparedStatement stmt = lease.prepareInsert(SQL_BATCH_NEW_RUN);
+                final int[] counts = stmt.executeBatch();
+                final int[] rIDs = new int[counts.length];
+                if (counts.length == 0) {
+                    return rIDs;
+                }
+
+                int lastRID = 0;
+                try (ResultSet res = stmt.getGeneratedKeys()) {
+                    if (res.next())
+                        lastRID = res.getInt(1);
+                }
+                if (lastRID == 0) {
+                    System.err.println("Could not determine the IDs of the inserted runs.");
+                    clearNewRunBatch(lease);
+                    return null;
+                }
+
+                final PreparedStatement samplesStmt = lease.prepareInsert(SQL_BATCH_RUN_SAMPLES);
+                for (int i = 0; i < rIDs.length; ++i) {
+                    rIDs[i] = lastRID - (rIDs.length - 1 - i);
+
+                    final byte[] encoded = m_batchSamples.get(i);
+                    if (encoded != null) {
+                        samplesStmt.setInt(1, rIDs[i]);
+                        samplesStmt.setBytes(2, encoded);
+                        samplesStmt.addBatch();
+                    }
+                }
+                m_batchSamples.clear();
+                samplesStmt.executeBatch();
 
+                lease.prepare(SQL_BATCH_ROLLUP).executeBatch();
+                return rIDs;
+            }
+            catch (final SQLException e) {
+                clearNewRunBatch(lease);
+                throw e;
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
+            return null;
         }
+    }
 
-        return exists;
+    /**
+     * Discards the rows, samples and rollup changes queued by DBManager#addNewRunToBatch() that have not been sent to
+     * the database. The batches belong to cached statements, so anything left in them would otherwise be written by
+     * the next batch.
+     */
+    private void clearNewRunBatch(final ConnectionPool.Lease lease) {
+        m_batchSamples.clear();
+        try {
+            lease.prepareInsert(SQL_BATCH_NEW_RUN).clearBatch();
+            lease.prepareInsert(SQL_BATCH_RUN_SAMPLES).clearBatch();
+            lease.prepare(SQL_BATCH_ROLLUP).clearBatch();
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+        }
     }
 
     /**
-     * Queries the database for all runs by a user with user ID \em userID between \em startDate and \em endDate.
+     * Replaces a run's samples with \em samples, stored compactly in the RunSampleBlobs table (see RunSampleCodec).
+     * Any samples of the run stored one per row in the RunSamples table are removed.
      *
-     * @param userID The ID of the user whose runs we wish to retrieve.
-     * @param startDate The lower bound of the interval we wish to retrieve runs for.
-     * @param endDate The uppper bound of the interval we wish to retrieve runs for.
+     * Inside a transaction (see DBManager#beginTransaction()), as when called by RunImporter, the changes belong to
+     * that transaction; otherwise they are made in a transaction of their own.
      *
-     * @return Returns a vector containing run IDs for each run that meets the search criteria.
+     * @param rID The ID of the run the samples belong to.
+     * @param samples All of the run's samples, in the order they were recorded.
+     *
+     * @return True if the samples were stored, False otherwise.
      */
-    public Vector<Integer> getRuns(final int userID, final java.util.Date startDate, final java.util.Date endDate) {
-        ResultSet res;
-        Vector<Integer> runs = new Vector<>();
-        try {
-            PreparedStatement stmt = m_conn.prepareStatement(
-                    "SELECT id FROM Runs WHERE user_id=? AND date BETWEEN ? AND ?;");
-            stmt.setInt(1, userID);
-            stmt.setLong(2, startDate.getTime());
-            stmt.setLong(3, endDate.getTime());
+    public boolean setRunSamples(final int rID, final RunSamples samples) {
+        boolean success = false;
 
-            res = stmt.executeQuery();
-
-            if (res.isClosed())
-                System.err.println("Result set closed; cannot get any data?");
+        try (ConnectionPool.Lease lease = m_pool.write()) {
+            final boolean ownTransaction = beginAtomicWrite(lease);
+            try {
+                PreparedStatement stmt = lease.prepare(
+                        "INSERT OR REPLACE INTO RunSampleBlobs (run_id, samples) VALUES (?, ?)");
+                stmt.setInt(1, rID);
+                stmt.setBytes(2, RunSampleCodec.encode(samples));
+                stmt.executeUpdate();
 
-            while (res.next()) {
-                runs.add(res.getInt("id"));
+                stmt = lease.prepare("DELETE FROM RunSamples WHERE run_id=?");
+                stmt.setInt(1, rID);
+                stmt.executeUpdate();
+                success = true;
+            }
+            finally {
+                endAtomicWrite(lease, ownTransaction, success);
             }
-            stmt.close();
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
         }
 
-        return runs;
+        return success;
     }
 
     /**
-     * A wrapper method for processing \em safe SQL queries.
-     *
-     * By safe we mean that the SQL query string is entirely hard-coded in the program source code. In other words, no
-     * user input is added. This is an important distinction as the former may leave the application vulnerable to
-     * SQL injection.
-     *
-     * In such cases, a SQL PreparedStatement should be used.
+     * Appends one sample to the end of a run's time series, as a row of the RunSamples table, as
+     * Run#newRunDataPoint() does for each data point it folds into a run.
      *
-     * @param sqlQuery The SQL code to be executed. Must be a \em SELECT statement.
+     * @param rID The ID of the run the sample belongs to.
+     * @param elapsed The elapsed time of the run in seconds.
+     * @param distance The cumulative distance (in metres) the user has run.
+     * @param altitude The user's altitude (in metres) relative to where the run began.
      *
-     * @return This method returns a ResultSet containing the returned row(s) and/or column(s) of the SQL query that
-     *         was executed.
+     * @return True if the sample was added, False otherwise.
      */
-    private ResultSet executeQuery(final String sqlQuery) {
-        ResultSet res = null;
-
-        try {
-            Statement stmt = m_conn.createStatement();
-            res = stmt.executeQuery(sqlQuery);
-            stmt.close();
+    public boolean newRunSample(final int rID, final float elapsed, final float distance, final float altitude) {
+        String sqlQuery = "INSERT INTO RunSamples (run_id, seq, elapsed, distance, altitude) " +
+                "SELECT ?, COALESCE(MAX(seq) + 1, 0), ?, ?, ? FROM RunSamples WHERE run_id=?";
+        try (ConnectionPool.Lease lease = m_pool.write()) {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
+            stmt.setInt(1, rID);
+            stmt.setFloat(2, elapsed);
+            stmt.setFloat(3, distance);
+            stmt.setFloat(4, altitude);
+            stmt.setInt(5, rID);
+            stmt.executeUpdate();
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
+            return false;
         }
 
-        return res;
+        return true;
     }
 
     /**
-     * A wrapper method for processing \em safe SQL queries.
+     * Reads a run's samples, in the order they were recorded, and passes each to \em handler as it is read, without
+     * holding the whole time series in memory.
      *
-     * By safe we mean that the SQL query string is entirely hard-coded in the program source code. In other words, no
-     * user input is added. This is an important distinction as the former may leave the application vulnerable to
+     * A run's samples are stored in two places: the ones written when the run was imported are compressed into a
+     * row of the RunSampleBlobs table (see DBManager#setRunSamples()), and any appended one at a time afterwards (see
+     * DBManager#newRunSample()) follow them as rows of the RunSamples table.
+     *
+     * @param rID The ID of the run.
+     * @param handler Receives each sample.
+     *
+     * @return True if every sample was read, False if a query failed.
+     */
+    public boolean forEachRunSample(final int rID, final RunSamples.SampleHandler handler) {
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            final byte[] encoded = getRunSampleBlob(lease, rID);
+            if (encoded != null) {
+                RunSampleCodec.forEach(encoded, handler);
+            }
+            forEachRunSampleRow(lease, rID, handler);
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads a run's samples, in the order they were recorded, into primitive arrays. See
+     * DBManager#forEachRunSample().
+     *
+     * @param rID The ID of the run.
+     *
+     * @return The run's samples. Empty if the run has none, \em null if a query fails.
+     */
+    public RunSamples loadRunSamples(final int rID) {
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            final byte[] encoded = getRunSampleBlob(lease, rID);
+            final RunSamples samples;
+            if (encoded != null) {
+                samples = new RunSamples(RunSampleCodec.count(encoded));
+                RunSampleCodec.decode(encoded, samples);
+            }
+            else {
+                samples = new RunSamples();
+            }
+            forEachRunSampleRow(lease, rID, samples::add);
+            return samples;
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads a run's samples, in the order they were recorded, into off-heap memory allocated from \em arena, so that
+     * the samples of many runs can be analyzed together without holding them on the heap. See
+     * DBManager#forEachRunSample().
+     *
+     * @param rID The ID of the run.
+     * @param arena The arena to allocate the samples from. The samples can be read until it is reset or closed.
+     *
+     * @return The run's samples. Empty if the run has none or a query fails.
+     */
+    public OffHeapRunSamples loadRunSamples(final int rID, final SampleArena arena) {
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            // The samples are allocated from the count, so the rows read must be the ones counted
+            final boolean ownTransaction = beginRead(lease);
+            try {
+                final byte[] encoded = getRunSampleBlob(lease, rID);
+                int count = encoded == null ? 0 : RunSampleCodec.count(encoded);
+
+                PreparedStatement stmt = lease.prepare("SELECT COUNT(*) FROM RunSamples WHERE run_id=?");
+                stmt.setInt(1, rID);
+                try (ResultSet res = stmt.executeQuery()) {
+                    if (res.next())
+                        count += res.getInt(1);
+                }
+
+                final OffHeapRunSamples samples = arena.allocate(count);
+                if (encoded != null) {
+                    RunSampleCodec.forEach(encoded, samples);
+                }
+                forEachRunSampleRow(lease, rID, samples);
+                return samples;
+            }
+            finally {
+                endRead(lease, ownTransaction);
+            }
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+            return arena.allocate(0);
+        }
+    }
+
+    /**
+     * Makes the reads that follow see one snapshot of the database: if the connection is not already in a
+     * transaction, one is started for them.
+     *
+     * @return True if a transaction was started, in which case DBManager#endRead() ends it.
+     */
+    private static boolean beginRead(final ConnectionPool.Lease lease) throws SQLException {
+        if (!lease.connection().getAutoCommit()) {
+            return false;
+        }
+        lease.connection().setAutoCommit(false);
+        return true;
+    }
+
+    /**
+     * Ends the transaction started by DBManager#beginRead(), if it started one.
+     */
+    private static void endRead(final ConnectionPool.Lease lease, final boolean ownTransaction) throws SQLException {
+        if (!ownTransaction) {
+            return;
+        }
+        try {
+            lease.connection().commit();
+        }
+        finally {
+            lease.connection().setAutoCommit(true);
+        }
+    }
+
+    /**
+     * @return The encoded samples stored in the RunSampleBlobs table for the run, or \em null if there are none.
+     */
+    private static byte[] getRunSampleBlob(final ConnectionPool.Lease lease, final int rID) throws SQLException {
+        PreparedStatement stmt = lease.prepare("SELECT samples FROM RunSampleBlobs WHERE run_id=?");
+        stmt.setInt(1, rID);
+
+        try (ResultSet res = stmt.executeQuery()) {
+            return res.next() ? res.getBytes(1) : null;
+        }
+    }
+
+    /**
+     * Passes the run's samples stored as rows of the RunSamples table to \em handler, in order.
+     */
+    private static void forEachRunSampleRow(final ConnectionPool.Lease lease, final int rID,
+                                            final RunSamples.SampleHandler handler) throws SQLException {
+        PreparedStatement stmt = lease.prepare(
+                "SELECT elapsed, distance, altitude FROM RunSamples WHERE run_id=? ORDER BY seq");
+        stmt.setInt(1, rID);
+
+        try (ResultSet res = stmt.executeQuery()) {
+            while (res.next()) {
+                handler.sample(res.getFloat(1), res.getFloat(2), res.getFloat(3));
+            }
+        }
+    }
+
+    /**
+     * Retrieves a run's attribute as a floating point number, where applicable, from the database.
+     *
+     * This method accepts a RunAttribute enumeration type to specify what attribute it is returning from the
+     * database. Only certain attributes are accepted by this method, namely those that are stored as real values.
+     * Attributes stored as other data types should use the appropriate accessor method.
+     *
+     * @param attribute \parblock
+     *    The attribute that the method is supposed to query the DB for and return the value of. Note that only certain
+     *    RunAttribute types are supported in this method.
+     *      - When \em attribute is RunAttribute.DURATION, the run's duration is returned.
+     *      - When \em attribute is RunAttribute.DISTANCE, the run's cumulative distance is returned in metres.
+     *      - When \em attribute is RunAttribute.ALTITUDE_ASCENDED, the run's cumulative altitude climbed is
+     *        returned in metres
+     *      - When \em attribute is RunAttribute.ALTITUDE_DESCENDED, the run's cumulative altitude descended is
+     *        returned in metres
+     *   \endparblock
+     * @param rID Unique ID corresponding to the row in the Runs table that we wish to query. If such an ID does
+     *             not exist, \em 0.0f will be returned.
+     *
+     * @return This method returns a float containing run attribute as specified by the \em attribute parameter.
+     */
+    public float getRunFloatAttribute(final RunAttribute attribute, final int rID) {
+        String columnLabel;
+        switch (attribute) {
+            case DURATION:
+                columnLabel = "duration";
+                break;
+            case DISTANCE:
+                columnLabel = "distance";
+                break;
+            case ALTITUDE_ASCENDED:
+                columnLabel = "altitude_ascended";
+                break;
+            case ALTITUDE_DESCENDED:
+                columnLabel = "altitude_descended";
+                break;
+            default:
+                return 0.0f;
+        }
+
+        final RunCache.Summary summary = getRunSummary(rID);
+        if (summary == null) {
+            System.err.println("Run " + Integer.toString(rID) + " does not exist. Cannot get " + columnLabel + ".");
+            return 0.0f;
+        }
+
+        return summary.get(attribute);
+
+    }
+
+    /**
+     * Retrieves a run's date from the database using its unique ID
+     *
+     * @param runID Unique ID corresponding to the row in the Runs table that we wish to query.
+     */
+    public java.util.Date getRunDate(final int runID) {
+        final RunCache.Summary summary = getRunSummary(runID);
+        return summary == null ? null : new java.util.Date(summary.date);
+    }
+
+    /**
+     * Determines if a given run ID exists in the database.
+     *
+     * @param rID Unique ID corresponding to the row in the Runs table that we wish to check exists.
+     *
+     * @return This method returns True if the run row with ID \em WOID exists in the database, or False otherwise.
+     */
+    public boolean runExists(final int rID) {
+        return getRunSummary(rID) != null;
+    }
+
+    /**
+     * Reads a run's row from DBManager#m_runCache or, if it is not cached there, from the
+     * database, caching it. All of the run's attributes are read at once, so that reading them one at a time (as
+     * Run(DBManager, int) does) costs a single query.
+     *
+     * The cache is not used by a thread that holds the writer (\em e.g., inside a transaction): it must see its own
+     * uncommitted changes, and must not share them with other threads before they are committed.
+     *
+     * @param rID Unique ID corresponding to the row in the Runs table that we wish to read.
+     *
+     * @return The run's row, or \em null if the run does not exist or the query fails.
+     */
+    private RunCache.Summary getRunSummary(final int rID) {
+        final boolean cacheable = !m_pool.holdsWriter();
+        if (cacheable) {
+            final RunCache.Summary cached = m_runCache.getSummary(rID);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final long version = m_runCache.summaryVersion();
+        RunCache.Summary summary = null;
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            PreparedStatement stmt = lease.prepare(SQL_RUN_SUMMARY);
+            stmt.setInt(1, rID);
+            try (ResultSet res = stmt.executeQuery()) {
+                if (res.next()) {
+                    summary = new RunCache.Summary(rID, res.getInt(1), res.getLong(2), res.getFloat(3),
+                            res.getFloat(4), res.getFloat(5), res.getFloat(6));
+                }
+            }
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+        }
+
+        if (cacheable && summary != null) {
+            m_runCache.putSummary(summary, version);
+        }
+        return summary;
+    }
+
+    /**
+     * A query over the runs of one user within a date range, read by DBManager#loadRange().
+     */
+    private interface RangeQuery<T> {
+        T read(ConnectionPool.Lease lease) throws SQLException;
+    }
+
+    /**
+     * Reads the result of a query over the runs of one user within a date range from DBManager#m_runCache or, if it
+     * is not cached there, from the database, caching it. As in DBManager#getRunSummary(), the cache is not used by a
+     * thread that holds the writer.
+     *
+     * @param key Identifies the query and its parameters.
+     * @param query Reads the result from the database.
+     *
+     * @return The result, which may be shared with other callers and must not be modified, or \em null if the query
+     *         fails.
+     */
+    private <T> T loadRange(final RunCache.RangeKey key, final RangeQuery<T> query) {
+        final boolean cacheable = !m_pool.holdsWriter();
+        if (cacheable) {
+            final T cached = m_runCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final long version = m_runCache.version(key.userID);
+        try (ConnectionPool.Lease lease = m_pool.read()) {
+            final T result = query.read(lease);
+            if (cacheable && result != null) {
+                m_runCache.put(key, result, version);
+            }
+            return result;
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Queries the database for all runs by a user with user ID \em userID between \em startDate and \em endDate.
+     *
+     * The result is cached until one of the user's runs in the interval is added or changed (see RunCache), as are
+     * those of the other range queries below.
+     *
+     * @param userID The ID of the user whose runs we wish to retrieve.
+     * @param startDate The lower bound of the interval we wish to retrieve runs for.
+     * @param endDate The uppper bound of the interval we wish to retrieve runs for.
+     *
+     * @return Returns a vector containing run IDs for each run that meets the search criteria.
+     */
+    public Vector<Integer> getRuns(final int userID, final java.util.Date startDate, final java.util.Date endDate) {
+        final RunCache.RangeKey key = new RunCache.RangeKey(RunCache.Kind.RUN_IDS, userID, startDate.getTime(),
+                endDate.getTime());
+        final Vector<Integer> runs = loadRange(key, lease -> {
+            Vector<Integer> ids = new Vector<>();
+            PreparedStatement stmt = lease.prepare(
+                    "SELECT id FROM Runs WHERE user_id=? AND date BETWEEN ? AND ?;");
+            stmt.setInt(1, userID);
+            stmt.setLong(2, startDate.getTime());
+            stmt.setLong(3, endDate.getTime());
+
+            try (ResultSet res = stmt.executeQuery()) {
+                while (res.next()) {
+                    ids.add(res.getInt("id"));
+                }
+            }
+            return ids;
+        });
+
+        // The cached vector is shared, so the caller is given its own
+        return runs == null ? new Vector<>() : new Vector<>(runs);
+    }
+
+    /**
+     * Retrieves all runs by a user with user ID \em userID between \em startDate and \em endDate, fully populated,
+     * using a single query.
+     *
+     * This is the set-based counterpart of DBManager#getRuns(). Building each Run from an ID with the Run(DBManager,
+     * int) constructor costs a query per run that is not in the RunCache, which adds up quickly for users with long
+     * histories. Here every row is read once and handed to the Run
+     * constructor directly.
+     *
+     * @param userID The ID of the user whose runs we wish to retrieve.
+     * @param startDate The lower bound of the interval we wish to retrieve runs for.
+     * @param endDate The uppper bound of the interval we wish to retrieve runs for.
+     *
+     * @return Returns a vector containing a Run object for each run that meets the search criteria, ordered by date.
+     */
+    public Vector<Run> loadRuns(final int userID, final java.util.Date startDate, final java.util.Date endDate) {
+        final RunCache.RangeKey key = new RunCache.RangeKey(RunCache.Kind.RUNS, userID, startDate.getTime(),
+                endDate.getTime());
+        final Vector<Run> runs = loadRange(key, lease -> {
+            Vector<Run> rows = new Vector<>();
+            String sqlQuery = "SELECT id, date, duration, distance, altitude_ascended, altitude_descended " +
+                    "FROM Runs WHERE user_id=? AND date BETWEEN ? AND ? ORDER BY date, id";
+            PreparedStatement stmt = lease.prepare(sqlQuery);
+            stmt.setInt(1, userID);
+            stmt.setLong(2, startDate.getTime());
+            stmt.setLong(3, endDate.getTime());
+
+            try (ResultSet res = stmt.executeQuery()) {
+                while (res.next()) {
+                    rows.add(new Run(
+                            this,
+                            res.getInt("id"),
+                            new java.util.Date(res.getLong("date")),
+                            res.getFloat("duration"),
+                            res.getFloat("distance"),
+                            res.getFloat("altitude_ascended"),
+                            res.getFloat("altitude_descended")
+                    ));
+                }
+            }
+            return rows;
+        });
+
+        // The cached vector is shared, so the caller is given its own
+        return runs == null ? new Vector<>() : new Vector<>(runs);
+    }
+
+    /**
+     * Retrieves all runs by a user with user ID \em userID between \em startDate and \em endDate as a RunColumns,
+     * using a single query.
+     *
+     * This reads the same rows as DBManager#loadRuns(), but stores them in primitive columns instead of creating a
+     * Run (and a Date) per row, for callers that only display or summarize the runs.
+     *
+     * @param userID The ID of the user whose runs we wish to retrieve.
+     * @param startDate The lower bound of the interval we wish to retrieve runs for.
+     * @param endDate The uppper bound of the interval we wish to retrieve runs for.
+     *
+     * @return Returns the runs that meet the search criteria, ordered by date. They may be shared with other callers
+     *         and must not be modified.
+     */
+    public RunColumns loadRunColumns(final int userID, final java.util.Date startDate,
+                                     final java.util.Date endDate) {
+        final RunCache.RangeKey key = new RunCache.RangeKey(RunCache.Kind.RUN_COLUMNS, userID, startDate.getTime(),
+                endDate.getTime());
+        final RunColumns runs = loadRange(key, lease -> {
+            RunColumns rows = new RunColumns();
+            String sqlQuery = "SELECT id, date, duration, distance, altitude_ascended, altitude_descended " +
+                    "FROM Runs WHERE user_id=? AND date BETWEEN ? AND ? ORDER BY date, id";
+            PreparedStatement stmt = lease.prepare(sqlQuery);
+            stmt.setInt(1, userID);
+            stmt.setLong(2, startDate.getTime());
+            stmt.setLong(3, endDate.getTime());
+
+            try (ResultSet res = stmt.executeQuery()) {
+                while (res.next()) {
+                    rows.add(
+                            res.getInt(1),
+                            res.getLong(2),
+                            res.getFloat(3),
+                            res.getFloat(4),
+                            res.getFloat(5),
+                            res.getFloat(6)
+                    );
+                }
+            }
+            return rows;
+        });
+
+        return runs == null ? new RunColumns() : runs;
+    }
+
+    /**
+     * Counts the runs by a user with user ID \em userID between \em startDate and \em endDate.
+     *
+     * @param userID The ID of the user whose runs we wish to count.
+     * @param startDate The lower bound of the interval we wish to count runs for.
+     * @param endDate The uppper bound of the interval we wish to count runs for.
+     *
+     * @return The number of runs that meet the search criteria, or \em 0 if the query fails.
+     */
+    public int countRuns(final int userID, final java.util.Date startDate, final java.util.Date endDate) {
+        final RunCache.RangeKey key = new RunCache.RangeKey(RunCache.Kind.RUN_COUNT, userID, startDate.getTime(),
+                endDate.getTime());
+        final Integer count = loadRange(key, lease -> {
+            String sqlQuery = "SELECT COUNT(*) FROM Runs WHERE user_id=? AND date BETWEEN ? AND ?";
+            PreparedStatement stmt = lease.prepare(sqlQuery);
+            stmt.setInt(1, userID);
+            stmt.setLong(2, startDate.getTime());
+            stmt.setLong(3, endDate.getTime());
+
+            try (ResultSet res = stmt.executeQuery()) {
+                return res.next() ? res.getInt(1) : 0;
+            }
+        });
+
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Retrieves the key of the first run of every page of \em pageSize runs by a user with user ID \em userID between
+     * \em startDate and \em endDate, in the order of DBManager#loadRuns().
+     *
+     * Element \em p of the result can be passed to DBManager#loadRunPage() to read page \em p directly, so a table can
+     * show any part of a long run history without reading the runs before it. Only the (user_id, date) index is read,
+     * and only every \em pageSize-th key is kept.
+     *
+     * @param userID The ID of the user whose runs we wish to page through.
+     * @param startDate The lower bound of the interval we wish to retrieve runs for.
+     * @param endDate The uppper bound of the interval we wish to retrieve runs for.
+     * @param pageSize The number of runs per page.
+     *
+     * @return The key of the first run of each page, in order.
+     */
+    public Vector<RunKey> loadRunPageKeys(final int userID, final java.util.Date startDate,
+                                          final java.util.Date endDate, final int pageSize) {
+        final RunCache.RangeKey key = new RunCache.RangeKey(RunCache.Kind.PAGE_KEYS, userID, startDate.getTime(),
+                endDate.getTime(), null, pageSize);
+        final Vector<RunKey> keys = loadRange(key, lease -> {
+            Vector<RunKey> pageKeys = new Vector<>();
+            // Scanning the index and skipping rows here is faster than numbering the rows with a window function
+            String sqlQuery = "SELECT date, id FROM Runs WHERE user_id=? AND date BETWEEN ? AND ? ORDER BY date, id";
+            PreparedStatement stmt = lease.prepare(sqlQuery);
+            stmt.setInt(1, userID);
+            stmt.setLong(2, startDate.getTime());
+            stmt.setLong(3, endDate.getTime());
+
+            try (ResultSet res = stmt.executeQuery()) {
+                for (int row = 0; res.next(); ++row) {
+                    if (row % pageSize == 0) {
+                        pageKeys.add(new RunKey(res.getLong(1), res.getInt(2)));
+                    }
+                }
+            }
+            return pageKeys;
+        });
+
+        // The cached vector is shared, so the caller is given its own
+        return keys == null ? new Vector<>() : new Vector<>(keys);
+    }
+
+    /**
+     * Retrieves up to \em limit runs by a user with user ID \em userID between \em startDate and \em endDate,
+     * starting with the run at \em first, in the order of DBManager#loadRuns().
+     *
+     * This uses keyset pagination: the query seeks straight to \em first in the (user_id, date) index, so reading a
+     * page takes the same time wherever it is in the user's history. The key of the run after the last one returned
+     * starts the next page.
+     *
+     * @param userID The ID of the user whose runs we wish to retrieve.
+     * @param startDate The lower bound of the interval we wish to retrieve runs for.
+     * @param endDate The uppper bound of the interval we wish to retrieve runs for.
+     * @param first The key of the first run of the page (see DBManager#loadRunPageKeys()), or \em null to start at
+     *              the first run in the interval.
+     * @param limit The largest number of runs to return.
+     *
+     * @return The runs of the page, ordered by date. They may be shared with other callers and must not be modified.
+     */
+    public RunColumns loadRunPage(final int userID, final java.util.Date startDate, final java.util.Date endDate,
+                                  final RunKey first, final int limit) {
+        final RunCache.RangeKey key = new RunCache.RangeKey(RunCache.Kind.PAGE, userID, startDate.getTime(),
+                endDate.getTime(), first, limit);
+        final RunColumns runs = loadRange(key, lease -> {
+            RunColumns rows = new RunColumns(limit);
+            String sqlQuery = "SELECT id, date, duration, distance, altitude_ascended, altitude_descended " +
+                    "FROM Runs WHERE user_id=? AND date BETWEEN ? AND ? AND (date, id) >= (?, ?) " +
+                    "ORDER BY date, id LIMIT ?";
+            PreparedStatement stmt = lease.prepare(sqlQuery);
+            stmt.setInt(1, userID);
+            stmt.setLong(2, startDate.getTime());
+            stmt.setLong(3, endDate.getTime());
+            stmt.setLong(4, first == null ? Long.MIN_VALUE : first.date);
+            stmt.setInt(5, first == null ? Integer.MIN_VALUE : first.id);
+            stmt.setInt(6, limit);
+
+            try (ResultSet res = stmt.executeQuery()) {
+                while (res.next()) {
+                    rows.add(
+                            res.getInt(1),
+                            res.getLong(2),
+                            res.getFloat(3),
+                            res.getFloat(4),
+                            res.getFloat(5),
+                            res.getFloat(6)
+                    );
+                }
+            }
+            return rows;
+        });
+
+        return runs == null ? new RunColumns() : runs;
+    }
+
+    /**
+     * Computes statistics for all runs by a user with user ID \em userID between \em startDate and \em endDate in
+     * a single aggregate query, and returns them as a RunStats object.
+     *
+     * This gives the same statistics as constructing a RunStats from the runs returned by DBManager#loadRuns(),
+     * but the database does the arithmetic and no Run objects are created. The one difference is that a run with a
+     * duration of zero (which has no defined speed) is left out of the speed statistics rather than making them
+     * undefined.
+     *
+     * As with the range queries above, the statistics are cached until one of the user's runs in the interval is
+     * added or changed, but for no longer than the time set with DBManager#setRunStatsTimeToLive().
+     *
+     * @param userID The ID of the user whose runs we wish to summarize.
+     * @param startDate The lower bound of the interval we wish to summarize runs for.
+     * @param endDate The uppper bound of the interval we wish to summarize runs for.
+     *
+     * @return Returns a RunStats object for the runs that meet the search criteria, or \em null if the query fails.
+     */
+    public RunStats getRunStats(final int userID, final java.util.Date startDate, final java.util.Date endDate) {
+        String sqlQuery = "SELECT COUNT(*) AS count, " +
+                aggregateColumns("duration", "duration") + ", " +
+                aggregateColumns("distance", "distance") + ", " +
+                aggregateColumns("distance / NULLIF(duration, 0)", "speed") + ", " +
+                aggregateColumns("altitude_ascended", "altitude_ascended") + ", " +
+                aggregateColumns("altitude_descended", "altitude_descended") + " " +
+                "FROM Runs WHERE user_id=? AND date BETWEEN ? AND ?";
+        final RunCache.RangeKey key = new RunCache.RangeKey(RunCache.Kind.STATS, userID, startDate.getTime(),
+                endDate.getTime());
+        final RunStats stats = loadRange(key, lease -> {
+            PreparedStatement stmt = lease.prepare(sqlQuery);
+            stmt.setInt(1, userID);
+            stmt.setLong(2, startDate.getTime());
+            stmt.setLong(3, endDate.getTime());
+
+            try (ResultSet res = stmt.executeQuery()) {
+                if (!res.next()) {
+                    return null;
+                }
+                RunStats result = new RunStats(res.getInt("count"));
+                setAggregate(result, RunAttribute.DURATION, res, "duration");
+                setAggregate(result, RunAttribute.DISTANCE, res, "distance");
+                setAggregate(result, RunAttribute.SPEED, res, "speed");
+                setAggregate(result, RunAttribute.ALTITUDE_ASCENDED, res, "altitude_ascended");
+                setAggregate(result, RunAttribute.ALTITUDE_DESCENDED, res, "altitude_descended");
+                return result;
+            }
+        });
+
+        // The cached statistics are shared, and a RunStats can have runs added to it, so the caller is given a copy
+        return stats == null ? null : stats.copy();
+    }
+
+    /**
+     * Computes the statistics for all runs by a user with user ID \em userID between \em startDate and \em endDate
+     * from the daily, weekly and monthly totals kept in the RunRollups table.
+     *
+     * The range is split by RunRollups#plan() into the coarsest whole buckets that fit inside it, and only the parts
+     * of it that do not cover whole days (at most one day at either end) are read from the Runs table, all in a
+     * single query. A summary of five years therefore reads about 60 rollup rows, however many runs it covers.
+     *
+     * The counts, totals, means and variances are the same as those of DBManager#getRunStats() (up to rounding), but
+     * the rollups do not record minima or maxima, so every minimum and maximum of the returned RunStats is \em NaN.
+     *
+     * The statistics are cached as those of DBManager#getRunStats() are, so that repeated clicks of "Go" and
+     * refreshes of the same period do not query the database.
+     *
+     * @param userID The ID of the user whose runs we wish to summarize.
+     * @param startDate The lower bound of the interval we wish to summarize runs for.
+     * @param endDate The uppper bound of the interval we wish to summarize runs for.
+     *
+     * @return Returns a RunStats object for the runs that meet the search criteria, or \em null if the query fails.
+     */
+    public RunStats getRolledUpRunStats(final int userID, final java.util.Date startDate,
+                                        final java.util.Date endDate) {
+        final RunRollups.Plan plan = RunRollups.plan(startDate.getTime(), endDate.getTime());
+        final RunCache.RangeKey key = new RunCache.RangeKey(RunCache.Kind.ROLLED_UP_STATS, userID,
+                startDate.getTime(), endDate.getTime());
+        final RunStats stats = loadRange(key, lease -> {
+            PreparedStatement stmt = lease.prepare(SQL_ROLLED_UP_STATS);
+            int i = 1;
+            stmt.setInt(i++, userID);
+            for (final long[] range : plan.bucketRanges) {
+                stmt.setLong(i++, range[0]);
+                stmt.setLong(i++, range[1]);
+            }
+            stmt.setInt(i++, userID);
+            for (final long[] range : plan.partialRanges) {
+                stmt.setLong(i++, range[0]);
+                stmt.setLong(i++, range[1]);
+            }
+
+            try (ResultSet res = stmt.executeQuery()) {
+                if (!res.next()) {
+                    return null;
+                }
+                RunStats result = new RunStats(res.getInt("run_count"));
+                setRolledUpAggregate(result, RunAttribute.DURATION, res, "duration", "run_count");
+                setRolledUpAggregate(result, RunAttribute.DISTANCE, res, "distance", "run_count");
+                setRolledUpAggregate(result, RunAttribute.SPEED, res, "speed", "speed_count");
+                setRolledUpAggregate(result, RunAttribute.ALTITUDE_ASCENDED, res, "altitude_ascended",
+                        "run_count");
+                setRolledUpAggregate(result, RunAttribute.ALTITUDE_DESCENDED, res, "altitude_descended",
+                        "run_count");
+                return result;
+            }
+        });
+
+        return stats == null ? null : stats.copy();
+    }
+
+    private static String buildRolledUpStatsQuery() {
+        final String[] totals = {"run_count", "duration_sum", "duration_sumsq", "distance_sum", "distance_sumsq",
+                "speed_count", "speed_sum", "speed_sumsq", "altitude_ascended_sum", "altitude_ascended_sumsq",
+                "altitude_descended_sum", "altitude_descended_sumsq"};
+        final String speed = "(distance / NULLIF(duration, 0))";
+
+        final StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < totals.length; ++i) {
+            sql.append(i == 0 ? "" : ", ").append("SUM(").append(totals[i]).append(") AS ").append(totals[i]);
+        }
+        sql.append(" FROM (SELECT ").append(String.join(", ", totals))
+                .append(" FROM RunRollups WHERE user_id=? AND (");
+        for (int i = 0; i < RunRollups.PLAN_PERIODS.length; ++i) {
+            sql.append(i == 0 ? "" : " OR ").append("(period=").append(RunRollups.PLAN_PERIODS[i])
+                    .append(" AND bucket BETWEEN ? AND ?)");
+        }
+        sql.append(") UNION ALL SELECT 1, duration, duration * duration, distance, distance * distance, ")
+                .append("CASE WHEN duration = 0 THEN 0 ELSE 1 END, ").append(speed).append(", ")
+                .append(speed).append(" * ").append(speed).append(", ")
+                .append("altitude_ascended, altitude_ascended * altitude_ascended, ")
+                .append("altitude_descended, altitude_descended * altitude_descended ")
+                .append("FROM Runs WHERE user_id=? AND (date BETWEEN ? AND ? OR date BETWEEN ? AND ?))");
+        return sql.toString();
+    }
+
+    /**
+     * Copies the totals read by DBManager#getRolledUpRunStats() for \em label into \em stats. The minimum and
+     * maximum are unknown and are set to \em NaN.
+     */
+    private static void setRolledUpAggregate(final RunStats stats, final RunAttribute attribute,
+                                             final ResultSet res, final String label, final String countLabel)
+            throws SQLException {
+        stats.setAggregate(attribute, StatAccumulator.of(
+                res.getLong(countLabel),
+                res.getDouble(label + "_sum"),
+                res.getDouble(label + "_sumsq"),
+                Double.NaN,
+                Double.NaN
+        ));
+    }
+
+    /**
+     * Builds the COUNT, SUM, sum of squares, MIN and MAX columns of an aggregate query over \em expression, labelled
+     * with \em label followed by \em _count, \em _sum, \em _sumsq, \em _min and \em _max respectively.
+     */
+    private static String aggregateColumns(final String expression, final String label) {
+        return "COUNT(" + expression + ") AS " + label + "_count, " +
+                "SUM(" + expression + ") AS " + label + "_sum, " +
+                "SUM((" + expression + ") * (" + expression + ")) AS " + label + "_sumsq, " +
+                "MIN(" + expression + ") AS " + label + "_min, " +
+                "MAX(" + expression + ") AS " + label + "_max";
+    }
+
+    /**
+     * Copies the columns built by DBManager#aggregateColumns() for \em label into \em stats. SQL \em NULL (which
+     * aggregates return when there are no rows) is read as \em 0.
+     */
+    private static void setAggregate(final RunStats stats, final RunAttribute attribute, final ResultSet res,
+                                     final String label) throws SQLException {
+        stats.setAggregate(attribute, StatAccumulator.of(
+                res.getLong(label + "_count"),
+                res.getDouble(label + "_sum"),
+                res.getDouble(label + "_sumsq"),
+                res.getDouble(label + "_min"),
+                res.getDouble(label + "_max")
+        ));
+    }
+
+    /**
+     * Adds \em change (see RunRollups#contribution()) to the day, week and month buckets that contain \em date.
+     *
+     * @param stmt A statement prepared from RunRollups#SQL_UPSERT (or DBManager#SQL_BATCH_ROLLUP if \em batch).
+     * @param batch True to queue the changes in the statement's batch, False to execute them immediately.
+     */
+    private static void updateRollups(final PreparedStatement stmt, final boolean batch, final int userID,
+                                      final long date, final double[] change) throws SQLException {
+        final long day = RunRollups.epochDay(date);
+        for (final int period : RunRollups.PERIODS) {
+            RunRollups.bind(stmt, userID, period, RunRollups.bucket(period, day), change);
+            if (batch) {
+                stmt.addBatch();
+            }
+            else {
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Fills the RunRollups table in from every existing run. Called by DBManager#migrate() inside the transaction
+     * that creates the table.
+     *
+     * @return True if every run was added to the rollups, False otherwise.
+     */
+    private boolean backfillRunRollups() {
+        String sqlQuery = "SELECT user_id, date, duration, distance, altitude_ascended, altitude_descended FROM Runs";
+        try (ConnectionPool.Lease lease = m_pool.write();
+             Statement select = lease.connection().createStatement();
+             ResultSet res = select.executeQuery(sqlQuery)) {
+            PreparedStatement stmt = lease.prepare(SQL_BATCH_ROLLUP);
+            while (res.next()) {
+                updateRollups(stmt, true, res.getInt(1), res.getLong(2),
+                        RunRollups.contribution(res.getFloat(3), res.getFloat(4), res.getFloat(5), res.getFloat(6)));
+            }
+            stmt.executeBatch();
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Makes the writes that follow atomic: if the writer connection is not already in a transaction (see
+     * DBManager#beginTransaction()), one is started for them.
+     *
+     * @return True if a transaction was started, in which case DBManager#endAtomicWrite() ends it.
+     */
+    private static boolean beginAtomicWrite(final ConnectionPool.Lease lease) throws SQLException {
+        if (!lease.connection().getAutoCommit()) {
+            return false;
+        }
+        lease.connection().setAutoCommit(false);
+        return true;
+    }
+
+    /**
+     * Commits (if \em success) or rolls back the transaction started by DBManager#beginAtomicWrite(), if it started
+     * one. Inside a caller's transaction this does nothing, and the caller decides what to do on failure.
+     */
+    private void endAtomicWrite(final ConnectionPool.Lease lease, final boolean ownTransaction,
+                                       final boolean success) {
+        if (!ownTransaction) {
+            return;
+        }
+        try {
+            if (success) {
+                lease.connection().commit();
+            }
+            else {
+                lease.connection().rollback();
+            }
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+        }
+        finally {
+            try {
+                lease.connection().setAutoCommit(true);
+            }
+            catch (final SQLException e) {
+                System.err.println(e.getMessage());
+            }
+            m_runCache.transactionEnded();
+        }
+    }
+
+    /**
+     * A wrapper method for processing \em safe SQL queries.
+     *
+     * By safe we mean that the SQL query string is entirely hard-coded in the program source code. In other words, no
+     * user input is added. This is an important distinction as the former may leave the application vulnerable to
      * SQL injection.
      *
      * In such cases, a SQL PreparedStatement should be used.
@@ -758,10 +1805,9 @@ class DBManager {
      * @return This method returns a boolean indicating if the query was successful.
      */
     private boolean executeUpdate(final String sqlQuery) {
-        try {
-            Statement stmt = m_conn.createStatement();
+        try (ConnectionPool.Lease lease = m_pool.write();
+             Statement stmt = lease.connection().createStatement()) {
             stmt.executeUpdate(sqlQuery);
-            stmt.close();
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -771,6 +1817,85 @@ class DBManager {
         return true;
     }
 
+    /**
+     * Begins an explicit transaction by disabling auto-commit on the writer connection.
+     *
+     * Until DBManager#commitTransaction() or DBManager#rollbackTransaction() is called, no change made through this
+     * DBManager is written to disk. This allows bulk operations (\em e.g., importing a file of data points) to be
+     * committed in a handful of transactions rather than one per statement.
+     *
+     * The calling thread holds the writer connection until it calls DBManager#endTransaction(). In the meantime,
+     * writes from other threads wait, while their reads continue to see the last committed state of the database.
+     *
+     * @return True if the transaction was started, False otherwise.
+     */
+    public boolean beginTransaction() {
+        m_pool.lockWriter();
+        try {
+            m_pool.writerConnection().setAutoCommit(false);
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+            m_pool.unlockWriter();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Commits all changes made since DBManager#beginTransaction() was called.
+     *
+     * The connection remains in transactional mode, so further changes become part of a new transaction; use
+     * DBManager#endTransaction() to return to auto-commit mode.
+     *
+     * @return True if the changes were committed, False otherwise.
+     */
+    public boolean commitTransaction() {
+        try {
+            m_pool.writerConnection().commit();
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+        m_runCache.transactionEnded();
+
+        return true;
+    }
+
+    /**
+     * Discards all changes made since the last commit, along with any rows (and changes to the rollups) queued by
+     * DBManager#addNewRunToBatch() that have not been executed.
+     */
+    public void rollbackTransaction() {
+        try (ConnectionPool.Lease lease = m_pool.write()) {
+            clearNewRunBatch(lease);
+            lease.connection().rollback();
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+        }
+        m_runCache.transactionEnded();
+    }
+
+    /**
+     * Returns the writer connection to auto-commit mode and releases it to other threads. Any changes that are still
+     * pending are committed.
+     */
+    public void endTransaction() {
+        try {
+            m_pool.writerConnection().setAutoCommit(true);
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+        }
+        finally {
+            m_runCache.transactionEnded();
+            m_pool.unlockWriter();
+        }
+    }
+
     /**
      * Returns a boolean value depending on whether or not the database is populated.
      *
@@ -781,12 +1906,12 @@ class DBManager {
      */
     private boolean isEmpty() {
 
-        try {
-            final DatabaseMetaData dbmd = m_conn.getMetaData();
+        try (ConnectionPool.Lease lease = m_pool.write()) {
+            final DatabaseMetaData dbmd = lease.connection().getMetaData();
             final String[] types = {"TABLE"};
-            final ResultSet rs = dbmd.getTables(null, null, "%", types);
-
-            return !rs.next();
+            try (ResultSet rs = dbmd.getTables(null, null, "%", types)) {
+                return !rs.next();
+            }
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -805,6 +1930,9 @@ class DBManager {
      * and all required tables if it/they do not exist. You are encouraged to view the source code of this method for
      * more information about the database schema used.
      *
+     * Once the tables exist, any schema migrations that have not yet been applied to the database are applied. See
+     * DBManager#migrate().
+     *
      * If all of the above is successful, the method returns True. Otherwise, False is returned.
      *
      * @param dbURL A file system path to the SQLite database file.
@@ -812,8 +1940,25 @@ class DBManager {
      * @return This method returns True if the database can be initialized, or False otherwise.
      */
     boolean init(final String dbURL) {
+        return init(dbURL, DEFAULT_READER_COUNT);
+    }
+
+    /**
+     * Initializes a pool of connections to the SQLite database, as described in DBManager#init(String), with
+     * \em readerCount reader connections.
+     *
+     * The database is put in write-ahead logging mode so that the readers can query it while the writer is in the
+     * middle of a transaction (\em e.g., an import).
+     *
+     * @param dbURL A file system path to the SQLite database file.
+     * @param readerCount The number of connections used for queries, in addition to the single writer connection.
+     *
+     * @return This method returns True if the database can be initialized, or False otherwise.
+     */
+    boolean init(final String dbURL, final int readerCount) {
+        m_runCache.clear();
         try {
-            m_conn = DriverManager.getConnection("jdbc:sqlite:" + dbURL);
+            m_pool = new ConnectionPool(dbURL, readerCount);
         }
         catch (final SQLException e) {
             System.err.println(e.getMessage());
@@ -860,7 +2005,149 @@ class DBManager {
 
         }
 
+        return migrate();
+    }
+
+    /**
+     * Brings the database schema up to date by applying, in order, every migration in DBManager#MIGRATIONS that has
+     * not yet been applied to it.
+     *
+     * The number of migrations that have been applied is stored in the database file itself using SQLite's
+     * \em user_version pragma (a database created before migrations were introduced has a version of \em 0). Each
+     * migration is applied in its own transaction together with the update to \em user_version, so a database is
+     * never left part way through a migration.
+     *
+     * @return True if the schema is up to date, False if a migration failed.
+     */
+    private boolean migrate() {
+        int version = 0;
+        try (ConnectionPool.Lease lease = m_pool.write();
+             Statement stmt = lease.connection().createStatement();
+             ResultSet res = stmt.executeQuery("PRAGMA user_version")) {
+            if (res.next())
+                version = res.getInt(1);
+        }
+        catch (final SQLException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+
+        if (version > MIGRATIONS.length) {
+            System.err.println("Database schema version " + version + " is newer than this application supports.");
+            return false;
+        }
+
+        for (; version < MIGRATIONS.length; ++version) {
+            System.out.println("Migrating database to schema version " + (version + 1) + "...");
+
+            if (!beginTransaction()) {
+                return false;
+            }
+
+            boolean success = true;
+            for (final String sqlQuery : MIGRATIONS[version]) {
+                if (!executeUpdate(sqlQuery)) {
+                    success = false;
+                    break;
+                }
+            }
+
+            if (success && version + 1 == ROLLUPS_SCHEMA_VERSION) {
+                success = backfillRunRollups();
+            }
+
+            // PRAGMA does not accept bound parameters; the version is always an integer
+            success = success && executeUpdate("PRAGMA user_version = " + (version + 1));
+
+            if (success) {
+                success = commitTransaction();
+            }
+            if (!success) {
+                rollbackTransaction();
+            }
+            endTransaction();
+
+            if (!success) {
+                return false;
+            }
+        }
+
         return true;
     }
 
+    /**
+     * Closes every cached prepared statement and then every connection to the database.
+     *
+     * After this method is called the DBManager must not be used again until DBManager#init() is invoked.
+     */
+    void close() {
+        if (m_pool != null) {
+            m_pool.close();
+            m_pool = null;
+        }
+        m_runCache.clear();
+    }
+
+    /**
+     * @return The number of reader connections, \em i.e., how many queries can run at once. \em 0 if queries share
+     *         the writer connection.
+     */
+    public int getReaderCount() {
+        return m_pool == null ? 0 : m_pool.readerCount();
+    }
+
+    /**
+     * @return The number of prepared statements currently held open by the statement cache.
+     */
+    public int getOpenStatementCount() {
+        return m_pool == null ? 0 : m_pool.openStatements();
+    }
+
+    /**
+     * @return The number of queries that were able to reuse an already compiled prepared statement.
+     */
+    public long getStatementCacheHits() {
+        return m_pool == null ? 0 : m_pool.hits();
+    }
+
+    /**
+     * @return The number of queries that required a prepared statement to be compiled.
+     */
+    public long getStatementCacheMisses() {
+        return m_pool == null ? 0 : m_pool.misses();
+    }
+
+    /**
+     * Sets how long the statistics returned by DBManager#getRunStats() and DBManager#getRolledUpRunStats() are cached
+     * for (RunCache#DEFAULT_STATS_TIME_TO_LIVE unless set). Statistics are invalidated as soon as a run they include
+     * is added or changed through this DBManager; the time to live bounds how stale they can be after changes made
+     * any other way.
+     *
+     * @param millis The time to live, in milliseconds. If this is \em 0, statistics are not cached.
+     */
+    public void setRunStatsTimeToLive(final long millis) {
+        m_runCache.setTimeToLive(millis);
+    }
+
+    /**
+     * @return The number of reads of runs or range query results that were answered from the RunCache.
+     */
+    public long getRunCacheHits() {
+        return m_runCache.hits();
+    }
+
+    /**
+     * @return The number of reads of runs or range query results that had to query the database.
+     */
+    public long getRunCacheMisses() {
+        return m_runCache.misses();
+    }
+
+    /**
+     * @return The number of runs and range query results removed from the RunCache to keep it within its bounds.
+     */
+    public long getRunCacheEvictions() {
+        return m_runCache.evictions();
+    }
+
 }
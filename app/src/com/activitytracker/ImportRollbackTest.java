@@ -0,0 +1,77 @@
+package com.activitytracker;
+
+import javax.naming.AuthenticationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+
+/**
+ * Checks that an import which fails part way through leaves nothing behind: neither in the database, nor queued in
+ * DBManager's batches (of runs or of changes to the rollups) to be written by the next import.
+ */
+public class ImportRollbackTest {
+
+    public static void main(String[] args) throws IOException, AuthenticationException {
+        final File dbFile = File.createTempFile("import-rollback", ".db");
+        final DBManager dbManager = new DBManager();
+        if (!dbManager.init(dbFile.getAbsolutePath())) {
+            System.err.println("Failed to initialize DBManager");
+            System.exit(1);
+        }
+
+        User.createUser(dbManager, "John Doe", "jdoe@mac.com", new Date(0), User.Sex.MALE, 1.6764f, 54.4310844f,
+                "My Very Secure Password");
+        final User john = new User(dbManager, "jdoe@mac.com", "My Very Secure Password");
+
+        // Two complete runs, then a line that cannot be parsed
+        final File badFile = writeFile("0,0,0,01-01-2018",
+                "60,200,1,01-01-2018",
+                "0,0,0,02-01-2018",
+                "60,200,1,02-01-2018",
+                "0,0,0,03-01-2018",
+                "sixty,200,1,03-01-2018");
+        try {
+            Run.bulkImport(dbManager, john, badFile.getAbsolutePath());
+            System.out.println("Test failed; the malformed file was imported.");
+        }
+        catch (final IOException e) {
+            System.out.println("Import failed as expected: " + e.getMessage());
+        }
+
+        final Date start = new Date(0);
+        final Date end = new Date();
+        boolean passed = check("runs after the failed import", dbManager.countRuns(john.getID(), start, end), 0);
+
+        final File goodFile = writeFile("0,0,0,04-01-2018", "60,200,1,04-01-2018");
+        Run.bulkImport(dbManager, john, goodFile.getAbsolutePath());
+        passed &= check("runs after the next import", dbManager.countRuns(john.getID(), start, end), 1);
+        passed &= check("runs in the rollups after the next import",
+                dbManager.getRolledUpRunStats(john.getID(), start, end).getRunCount(), 1);
+
+        dbManager.close();
+        badFile.delete();
+        goodFile.delete();
+        dbFile.delete();
+
+        System.out.println(passed ? "Test passed." : "Test failed.");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(final String what, final int actual, final int expected) {
+        System.out.println("Number of " + what + ": " + actual + " (expected " + expected + ")");
+        return actual == expected;
+    }
+
+    private static File writeFile(final String... lines) throws IOException {
+        final File file = File.createTempFile("import-rollback", ".csv");
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (final String line : lines) {
+                writer.println(line);
+            }
+        }
+        return file;
+    }
+}
@@ -4,7 +4,6 @@ import mdlaf.animation.*;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -14,10 +13,10 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 class MainWindow {
-    private final DefaultTableModel m_tableModel = new DefaultTableModel();
+    private final RunTableModel m_tableModel;
 
     private JPanel m_rootPanel;
     private JPanel topPanel;
@@ -33,11 +32,18 @@ class MainWindow {
     private JTextArea textAreaStats;
 
     private DBManager m_dbManager = null;
+    private AsyncDBManager m_asyncDBManager;
     private User m_user;
+    /**
+     * The statistics request started by the last click of the Go button, or \em null if there has been none.
+     */
+    private CompletableFuture<RunStats> m_statsRequest = null;
 
     MainWindow(DBManager dbmanager, final User user) {
         m_dbManager = dbmanager;
+        m_asyncDBManager = new AsyncDBManager(m_dbManager);
         m_user = user;
+        m_tableModel = new RunTableModel(m_dbManager, m_user.getID());
 
         setupUI();
         setupActionListeners();
@@ -78,40 +84,7 @@ class MainWindow {
     }
 
     private void populateTable(final Date start, final Date end) {
-
-        // Clear table model
-        m_tableModel.setRowCount(0);
-
-        final Vector<String> columnNames = new Vector<>();
-        columnNames.add("Date");
-        columnNames.add("Duration (sec)");
-        columnNames.add("Distance (m)");
-        columnNames.add("Altitude + (m)");
-        columnNames.add("Altitude - (m)");
-
-        final Vector<Run> runs = Run.getRuns(m_dbManager, m_user, start, end);
-        final Vector<Vector<Object>> dataVector = new Vector<>();
-
-        if (runs == null) {
-            return;
-        }
-
-        if (!runs.isEmpty()) {
-            for (final Run run : runs) {
-                final Vector<Object> row = new Vector<>();
-
-                row.add(run.getRunDate());
-                row.add(run.getDuration());
-                row.add(run.getDistance());
-                row.add(run.getAltitudeAscended());
-                row.add(run.getAltitudeDescended());
-
-                dataVector.add(row);
-            }
-        }
-
-        m_tableModel.setDataVector(dataVector, columnNames);
-        m_tableModel.setColumnCount(5);
+        m_tableModel.setRange(start, end);
     }
 
     private void setupActionListeners() {
@@ -127,24 +100,16 @@ class MainWindow {
                 if (res == JFileChooser.APPROVE_OPTION) {
                     final File file = fc.getSelectedFile();
 
-                    // Run in separate thread
-                    new SwingWorker<Void, Void>() {
-                        @Override
-                        protected Void doInBackground() {
-                            buttonImportData.setEnabled(false);
-                            try {
-                                Run.bulkImport(m_dbManager, m_user, file.getAbsolutePath());
-                            } catch(final Exception e) {
-                                buttonImportData.setEnabled(true);
-                                return null;
-                            }
-
+                    buttonImportData.setEnabled(false);
+                    m_asyncDBManager.importFile(m_user, file.getAbsolutePath()).whenCompleteAsync((result, ex) -> {
+                        if (ex != null) {
+                            System.err.println(ex.getMessage());
+                        }
+                        else {
                             populateTable();
-
-                            buttonImportData.setEnabled(true);
-                            return null;
                         }
-                    }.execute();
+                        buttonImportData.setEnabled(true);
+                    }, SwingUtilities::invokeLater);
                 }
             }
         });
@@ -161,26 +126,56 @@ class MainWindow {
                 try {
                     startDate = sourceFormat.parse(start);
                     endDate = sourceFormat.parse(end);
-                    Vector<Run> runs = Run.getRuns(m_dbManager, m_user, startDate, endDate);
-                    RunStats stats = new RunStats(runs);
-                    String statStr = "Run Stats beginning at " + start + " and ending at " + end + ":\n" +
-                            "Average Run Duration: " + stats.getMeanDuration() + "\n" +
-                            "Average Speed: " + stats.getMeanSpeed() + "\n" +
-                            "Average Distance: " + stats.getMeanDistance() + "\n" +
-                            "Total Distance: " + stats.getTotalDistance() + "\n" +
-                            "Average Altitude Ascended: " + stats.getMeanAltitudeAscended() + "\n" +
-                            "Total Altiitude Ascended: " + stats.getTotalAltitudeAscended() + "\n" +
-                            "Average Altitude Descended: " + stats.getMeanAltitudeDescended();
-                    populateTable(startDate, endDate);
-                    textAreaStats.setText(statStr);
                 }
                 catch (final ParseException ex) {
                     System.err.println(ex.getMessage());
+                    return;
                 }
+
+                populateTable(startDate, endDate);
+                showStats(start, end, startDate, endDate);
             }
         });
     }
 
+    /**
+     * Computes the statistics for a date range on a background thread and shows them once they are ready.
+     *
+     * A request that is still pending when a newer one is made is cancelled: if it has not started it never runs,
+     * and if it has, its result is discarded rather than overwriting the newer one.
+     */
+    private void showStats(final String start, final String end, final Date startDate, final Date endDate) {
+        if (m_statsRequest != null) {
+            m_statsRequest.cancel(false);
+        }
+
+        final CompletableFuture<RunStats> request = m_asyncDBManager.getRolledUpRunStats(m_user.getID(), startDate,
+                endDate);
+        m_statsRequest = request;
+
+        request.whenCompleteAsync((result, ex) -> {
+            // A request that finished before it could be cancelled must still not replace a newer one
+            if (request != m_statsRequest || request.isCancelled()) {
+                return;
+            }
+            if (ex != null) {
+                System.err.println(ex.getMessage());
+                return;
+            }
+
+            final RunStats stats = result == null ? new RunStats() : result;
+            String statStr = "Run Stats beginning at " + start + " and ending at " + end + ":\n" +
+                    "Average Run Duration: " + stats.getMeanDuration() + "\n" +
+                    "Average Speed: " + stats.getMeanSpeed() + "\n" +
+                    "Average Distance: " + stats.getMeanDistance() + "\n" +
+                    "Total Distance: " + stats.getTotalDistance() + "\n" +
+                    "Average Altitude Ascended: " + stats.getMeanAltitudeAscended() + "\n" +
+                    "Total Altiitude Ascended: " + stats.getTotalAltitudeAscended() + "\n" +
+                    "Average Altitude Descended: " + stats.getMeanAltitudeDescended();
+            textAreaStats.setText(statStr);
+        }, SwingUtilities::invokeLater);
+    }
+
     JPanel rootPanel() {
         return m_rootPanel;
     }
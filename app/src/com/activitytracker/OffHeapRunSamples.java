@@ -0,0 +1,107 @@
+package com.activitytracker;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The samples of one run, stored off the heap in memory allocated from a SampleArena.
+ *
+ * The samples are stored column by column, as in RunSamples: the elapsed times, then the distances, then the
+ * altitudes, each a run of floats. They are filled in, in order, by passing each sample to
+ * OffHeapRunSamples#sample() (\em e.g., from DBManager#forEachRunSample()), and can be read once the arena has
+ * handed them out. They can no longer be read once the arena is reset or closed.
+ */
+final class OffHeapRunSamples implements RunSampleView, RunSamples.SampleHandler {
+    /**
+     * The arena the samples were allocated from.
+     */
+    private final SampleArena arena;
+    /**
+     * The generation of SampleArena in which the samples were allocated.
+     */
+    private final int generation;
+    /**
+     * The slab holding the samples.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The position in OffHeapRunSamples#buffer of the first elapsed time.
+     */
+    private final int elapsedOffset;
+    /**
+     * The position in OffHeapRunSamples#buffer of the first distance.
+     */
+    private final int distanceOffset;
+    /**
+     * The position in OffHeapRunSamples#buffer of the first altitude.
+     */
+    private final int altitudeOffset;
+    /**
+     * The number of samples there is room for.
+     */
+    private final int capacity;
+    /**
+     * The number of samples filled in.
+     */
+    private int size = 0;
+
+    /**
+     * Called by SampleArena#allocate().
+     */
+    OffHeapRunSamples(final SampleArena arena, final int generation, final ByteBuffer buffer, final int offset,
+                      final int capacity) {
+        this.arena = arena;
+        this.generation = generation;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.elapsedOffset = offset;
+        this.distanceOffset = offset + capacity * Float.BYTES;
+        this.altitudeOffset = offset + 2 * capacity * Float.BYTES;
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @throws IllegalStateException Thrown if there is no room for the sample, or the arena has been reset or closed.
+     */
+    @Override
+    public void sample(final float elapsed, final float distance, final float altitude) {
+        arena.checkValid(generation);
+        if (size == capacity) {
+            throw new IllegalStateException("No room for more than " + capacity + " samples.");
+        }
+        buffer.putFloat(elapsedOffset + size * Float.BYTES, elapsed);
+        buffer.putFloat(distanceOffset + size * Float.BYTES, distance);
+        buffer.putFloat(altitudeOffset + size * Float.BYTES, altitude);
+        ++size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public float getElapsed(final int index) {
+        checkIndex(index);
+        return buffer.getFloat(elapsedOffset + index * Float.BYTES);
+    }
+
+    @Override
+    public float getDistance(final int index) {
+        checkIndex(index);
+        return buffer.getFloat(distanceOffset + index * Float.BYTES);
+    }
+
+    @Override
+    public float getAltitude(final int index) {
+        checkIndex(index);
+        return buffer.getFloat(altitudeOffset + index * Float.BYTES);
+    }
+
+    private void checkIndex(final int index) {
+        arena.checkValid(generation);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for " + size + " samples.");
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.activitytracker;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable sketch of a stream of values that answers approximate quantile (\em e.g., median or 90th percentile)
+ * and rank queries in bounded memory, however many values it has seen.
+ *
+ * This is a KLL sketch (Karnin, Lang and Liberty, "Optimal Quantile Approximation in Streams", 2016). Values are
+ * kept in a hierarchy of compactors: each item at level \em h stands for 2^\em h of the original values. When the
+ * sketch holds more items than it has room for, the lowest full level is sorted and every other item (starting at a
+ * random offset) is promoted to the next level up, with the rest discarded. Level capacities shrink geometrically
+ * towards the bottom, so the sketch holds about 3\em k items in total, and a quantile's rank is typically within
+ * about 1.7 / \em k of the requested one (1% for the default \em k).
+ *
+ * The smallest and largest values are tracked exactly. Like StatAccumulator, sketches can be merged, so sketches of
+ * disjoint sets of runs can be combined into a sketch of their union.
+ */
+class QuantileSketch {
+    /**
+     * The default accuracy parameter: the capacity of the top level.
+     */
+    static final int DEFAULT_K = 200;
+    /**
+     * The smallest capacity of any level.
+     */
+    private static final int MIN_CAPACITY = 8;
+    /**
+     * The ratio between the capacities of adjacent levels.
+     */
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+    /**
+     * The accuracy parameter of the sketch.
+     */
+    private final int k;
+    /**
+     * The items at each level. Only the first QuantileSketch#sizes[h] items of level \em h are valid.
+     */
+    private float[][] levels = new float[1][];
+    /**
+     * The number of items at each level.
+     */
+    private int[] sizes = new int[1];
+    /**
+     * The number of levels in use.
+     */
+    private int numLevels = 1;
+    /**
+     * The capacity of each level, which depends on the number of levels in use.
+     */
+    private int[] capacities = new int[1];
+    /**
+     * The sum of QuantileSketch#capacities over the levels in use.
+     */
+    private int totalCapacity;
+    /**
+     * The number of items retained across every level.
+     */
+    private int retained = 0;
+    /**
+     * The number of values the sketch has seen.
+     */
+    private long count = 0;
+    /**
+     * The smallest value the sketch has seen.
+     */
+    private float min = Float.POSITIVE_INFINITY;
+    /**
+     * The largest value the sketch has seen.
+     */
+    private float max = Float.NEGATIVE_INFINITY;
+    /**
+     * The state of the generator used to pick which items are promoted. Seeded with a constant so that sketches of
+     * the same values are identical.
+     */
+    private long randomState = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Creates an empty sketch with accuracy parameter QuantileSketch#DEFAULT_K.
+     */
+    QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param k The accuracy parameter. Larger values give more accurate answers at the cost of memory.
+     */
+    QuantileSketch(final int k) {
+        this.k = Math.max(k, MIN_CAPACITY);
+        updateCapacities();
+        levels[0] = new float[capacities[0]];
+    }
+
+    /**
+     * Adds a value to the sketch. \em NaN is ignored.
+     *
+     * @param value The value to add.
+     */
+    void add(final float value) {
+        if (value != value) {
+            return;
+        }
+
+        ++count;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        append(0, value);
+        compress();
+    }
+
+    /**
+     * Adds the values in [\em from, \em to) of \em values to the sketch, skipping any that are \em NaN.
+     *
+     * @param values The array holding the values.
+     * @param from The index of the first value to add.
+     * @param to The index after the last value to add.
+     */
+    void addAll(final float[] values, final int from, final int to) {
+        for (int i = from; i < to; ++i) {
+            add(values[i]);
+        }
+    }
+
+    /**
+     * Adds every value summarized by \em other to this sketch. \em other is not modified.
+     *
+     * @param other The sketch to merge into this one.
+     */
+    void merge(final QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+
+        for (int h = 0; h < other.numLevels; ++h) {
+            for (int i = 0; i < other.sizes[h]; ++i) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress();
+    }
+
+    /**
+     * @return The number of values the sketch has seen.
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Estimates the value below which a fraction \em q of the values fall.
+     *
+     * @param q The quantile, between \em 0 (the minimum) and \em 1 (the maximum). \em 0.5 is the median.
+     *
+     * @return The estimated quantile, or \em NaN if the sketch is empty.
+     */
+    float getQuantile(final double q) {
+        if (q < 0.0 || q > 1.0) {
+            throw new IllegalArgumentException("Quantile " + q + " is not between 0 and 1.");
+        }
+        if (count == 0) {
+            return Float.NaN;
+        }
+        if (q == 0.0) {
+            return min;
+        }
+        if (q == 1.0) {
+            return max;
+        }
+
+        final float[] values = new float[retained];
+        final long[] weights = new long[values.length];
+        sortedItems(values, weights);
+
+        final double target = q * count;
+        long cumulative = 0;
+        for (int i = 0; i < values.length; ++i) {
+            cumulative += weights[i];
+            if (cumulative >= target) {
+                return values[i];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Estimates how many of the values fall into each bucket of a histogram.
+     *
+     * @param splitPoints The boundaries between buckets, in increasing order. Bucket \em i holds the values below
+     *                    \em splitPoints[i] and at or above \em splitPoints[i - 1].
+     *
+     * @return The estimated number of values in each of the \em splitPoints.length + 1 buckets.
+     */
+    long[] getHistogram(final float[] splitPoints) {
+        final long[] buckets = new long[splitPoints.length + 1];
+
+        for (int h = 0; h < numLevels; ++h) {
+            final long weight = 1L << h;
+            for (int i = 0; i < sizes[h]; ++i) {
+                int bucket = Arrays.binarySearch(splitPoints, levels[h][i]);
+                bucket = bucket >= 0 ? bucket + 1 : -bucket - 1;
+                // binarySearch returns any one of several equal split points; values equal to a split point belong
+                // above all of them
+                while (bucket < splitPoints.length && splitPoints[bucket] <= levels[h][i]) {
+                    ++bucket;
+                }
+                buckets[bucket] += weight;
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Fills \em values and \em weights with every retained item, sorted by value.
+     */
+    private void sortedItems(final float[] values, final long[] weights) {
+        final long[] packed = new long[values.length];
+        int n = 0;
+        for (int h = 0; h < numLevels; ++h) {
+            for (int i = 0; i < sizes[h]; ++i) {
+                // Sort by value and carry the level along in the low bits
+                packed[n++] = ((long) sortableBits(levels[h][i]) << 8) | h;
+            }
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < n; ++i) {
+            values[i] = fromSortableBits((int) (packed[i] >> 8));
+            weights[i] = 1L << (packed[i] & 0xFF);
+        }
+    }
+
+    /**
+     * Maps a float to an int with the same ordering.
+     */
+    private static int sortableBits(final float value) {
+        final int bits = Float.floatToIntBits(value);
+        return bits < 0 ? bits ^ 0x7FFFFFFF : bits;
+    }
+
+    private static float fromSortableBits(final int bits) {
+        return Float.intBitsToFloat(bits < 0 ? bits ^ 0x7FFFFFFF : bits);
+    }
+
+    /**
+     * Recomputes the capacity of every level after the number of levels has changed.
+     */
+    private void updateCapacities() {
+        if (capacities.length < numLevels) {
+            capacities = Arrays.copyOf(capacities, levels.length);
+        }
+        totalCapacity = 0;
+        for (int h = 0; h < numLevels; ++h) {
+            final int depth = numLevels - 1 - h;
+            capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+            totalCapacity += capacities[h];
+        }
+    }
+
+    private void append(final int h, final float value) {
+        while (h >= numLevels) {
+            addLevel();
+        }
+        if (sizes[h] == levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], Math.max(levels[h].length * 2, MIN_CAPACITY));
+        }
+        levels[h][sizes[h]++] = value;
+        ++retained;
+    }
+
+    private void addLevel() {
+        if (numLevels == levels.length) {
+            levels = Arrays.copyOf(levels, numLevels * 2);
+            sizes = Arrays.copyOf(sizes, numLevels * 2);
+        }
+        levels[numLevels] = new float[MIN_CAPACITY];
+        sizes[numLevels] = 0;
+        ++numLevels;
+        updateCapacities();
+    }
+
+    /**
+     * Compacts the lowest full level until the sketch is within its total capacity.
+     */
+    private void compress() {
+        while (retained > totalCapacity) {
+            for (int h = 0; h < numLevels; ++h) {
+                if (sizes[h] >= capacities[h]) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts level \em h and promotes every other item to level \em h + 1. If the level holds an odd number of items,
+     * its smallest item stays behind.
+     */
+    private void compact(final int h) {
+        final float[] level = levels[h];
+        final int size = sizes[h];
+        Arrays.sort(level, 0, size);
+
+        final int start = size % 2;
+        final int offset = nextBit();
+        for (int i = start + offset; i < size; i += 2) {
+            append(h + 1, level[i]);
+        }
+        // append() may have replaced levels[h + 1] but never levels[h]
+        retained -= size - start;
+        sizes[h] = start;
+    }
+
+    /**
+     * @return A pseudo-random bit from an xorshift generator.
+     */
+    private int nextBit() {
+        randomState ^= randomState << 13;
+        randomState ^= randomState >>> 7;
+        randomState ^= randomState << 17;
+        return (int) (randomState >>> 63);
+    }
+}
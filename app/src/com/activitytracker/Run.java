@@ -1,16 +1,8 @@
 package com.activitytracker;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.Vector;
 
 /**
@@ -75,6 +67,33 @@ class Run {
         this.caloriesBurned = 0;
     }
 
+    /**
+     * Instantiates a run from values that have already been read from the database.
+     *
+     * This constructor is used by set-based loaders such as DBManager#loadRuns(), which retrieve every attribute
+     * of many runs in a single query, rather than issuing one query per run as Run(DBManager, int) does.
+     *
+     * @param dbManager The connection to the database.
+     * @param rID The run's unique ID.
+     * @param runDate The date the run took place.
+     * @param duration The length of the run in seconds.
+     * @param distance The distance (in metres) that the user ran.
+     * @param altitudeAscended The altitude (in metres) that the user climbed.
+     * @param altitudeDescended The altitude (in metres) that the user descended.
+     */
+    Run (final DBManager dbManager, final int rID, final Date runDate, final float duration,
+         final float distance, final float altitudeAscended, final float altitudeDescended) {
+        this.id = rID;
+        this.dbManager = dbManager;
+        this.runDate = runDate;
+        this.duration = duration;
+        this.distance = distance;
+        this.speed = this.distance / this.duration;
+        this.altitudeAscended = altitudeAscended;
+        this.altitudeDescended = altitudeDescended;
+        this.caloriesBurned = 0;
+    }
+
 
     /**
      * Adds a new workout to the database or updates an existing workout with new information that the user imported
@@ -90,6 +109,11 @@ class Run {
      *     their difference is compared to the current relative altitude, and depending whether this difference is
      *     positive or negative, the appropriate field in the database is updated to reflect the change.
      *
+     * The data point itself is also appended to the run's samples in the RunSamples table (see RunSamples).
+     *
+     * The user's last run is read from (and, for a new run, recorded in) the User object, and only written to the
+     * database along with the new run, so that data points which continue a run cost no query to find it.
+     *
      * @param dbManager Database connection with with the method interacts.
      * @param user A User object corresponding to the use whose run is being added to the database.
      * @param duration The length of time in seconds that the user's run lasted.
@@ -109,6 +133,11 @@ class Run {
         if (duration == 0f && distance == 0f && altitude == 0f) {
             altitude_ascended = 0f;
             altitude_descended = 0f;
+
+            // The run and the user's reference to it are committed together (see User#flushLastRID())
+            if (!dbManager.beginTransaction()) {
+                return;
+            }
             rID = dbManager.newRun(
                     userID,
                     date,
@@ -118,7 +147,15 @@ class Run {
                     altitude_descended
             );
             user.setLastRID(rID);
-            System.err.println("Run " + Integer.toString(rID) + " added to database.");
+            if (user.flushLastRID() && dbManager.commitTransaction()) {
+                System.err.println("Run " + Integer.toString(rID) + " added to database.");
+            }
+            else {
+                dbManager.rollbackTransaction();
+                user.discardLastRID();
+                rID = 0;
+            }
+            dbManager.endTransaction();
         } else {
             rID = user.getLastRID();
             if (dbManager.runExists(rID)) {
@@ -136,6 +173,7 @@ class Run {
                 }
 
                 dbManager.setRun(rID, duration, distance, altitude_ascended, altitude_descended);
+                dbManager.newRunSample(rID, duration, distance, altitude);
                 System.err.println("Run " + Integer.toString(rID) + " exists in the database; updating...");
             } else {
                 System.err.println("Run table and User table are inconsistent. No changes made.");
@@ -161,26 +199,29 @@ class Run {
      */
     public static Vector<Run> getRuns(final DBManager dbManager, final User user,
                                       final Date startDate, final Date endDate) {
-        Vector<Run> runs = new Vector<>();
-        int rID;
-        Vector<Integer> rIDs = dbManager.getRuns(user.getID(), startDate, endDate);
+        return dbManager.loadRuns(user.getID(), startDate, endDate);
+    }
 
-        if (rIDs != null) {
-            Iterator<Integer> runIDIter = rIDs.iterator();
-            while (runIDIter.hasNext()) {
-                rID = runIDIter.next();
-                runs.add(new Run(dbManager, rID));
-            }
-            return runs;
-        }
-        else {
-            System.err.println("DBManager.getRuns() returned null.");
-            return null;
-        }
+    /**
+     * Retrieves a set of runs from the database. Returns the result as a RunColumns, without creating a Run object
+     * per run.
+     *
+     * @param dbManager Database connection with with the method interacts.
+     * @param user A User object corresponding to the use whose run(s) is/are being retrieved from the database.
+     * @param startDate The beginning of the interval for which we are retrieving workouts.
+     * @param endDate The end of the interval for which we are retrieving workouts.
+     *
+     * @return The runs entered between the start and end dates specified, ordered by date.
+     */
+    public static RunColumns getRunColumns(final DBManager dbManager, final User user,
+                                           final Date startDate, final Date endDate) {
+        return dbManager.loadRunColumns(user.getID(), startDate, endDate);
     }
 
     /**
-     * Opens and iterates through a file. The Run#newRunDataPoint() method is called for each line.
+     * Opens and iterates through a file, adding each line to the database as described in Run#newRunDataPoint().
+     *
+     * The file is imported by a RunImporter using RunImporter#DEFAULT_BATCH_SIZE data points per batch.
      *
      * @param dbManager Database connection with with the method interacts.
      * @param user A User object corresponding to the use whose run(s) is/are being retrieved from
@@ -192,31 +233,26 @@ class Run {
      */
     public static void bulkImport(final DBManager dbManager, final User user, final String filePath)
             throws FileNotFoundException, IOException {
-        BufferedReader br = new BufferedReader(new FileReader(filePath));
-        String line = null;
-        Date date = null;
-        while ((line = br.readLine()) != null)  
-        {
-            String[] attributes = line.split(",");
-            String buffTime = attributes[0];
-            String buffDistance = attributes[1];
-            String buffAltitude = attributes[2];
-            String buffDate = attributes[3];
-            DateFormat sourceFormat = new SimpleDateFormat("dd-MM-yyyy");
-            try {
-                date = sourceFormat.parse(buffDate);
-            }
-            catch (final ParseException e) {
-                System.err.println(e.getMessage());
-            }
-
-            // Convert strings to floats
-            float fDur = Float.parseFloat(buffTime);
-            float fDist = Float.parseFloat(buffDistance);
-            float fAlt = Float.parseFloat(buffAltitude);
+        bulkImport(dbManager, user, filePath, RunImporter.DEFAULT_BATCH_SIZE);
+    }
 
-            newRunDataPoint(dbManager, user, fDur, date, fDist, fAlt);
-        } 
+    /**
+     * Opens and iterates through a file, adding each line to the database as described in Run#newRunDataPoint().
+     *
+     * Rather than writing each line in its own transaction, the file is imported inside explicit transactions with
+     * run updates sent to the database in JDBC batches of \em batchSize data points. See RunImporter.
+     *
+     * @param dbManager Database connection with with the method interacts.
+     * @param user A User object corresponding to the use whose run(s) is/are being imported.
+     * @param filePath The file to be iterated through
+     * @param batchSize The number of data points to write per batch and per transaction.
+     *
+     * @throws FileNotFoundException Thrown if the file path given does not exist.
+     * @throws IOException Thrown if there is an error reading or opening the file.
+     */
+    public static void bulkImport(final DBManager dbManager, final User user, final String filePath,
+                                  final int batchSize) throws FileNotFoundException, IOException {
+        new RunImporter(dbManager, user, batchSize).importFile(filePath);
     }
 
     /**
@@ -261,8 +297,7 @@ class Run {
      * @return The Run's altitude ascended as defined in the database.
      */
     public float getAltitudeAscended() {
-        BigDecimal a = new BigDecimal(altitudeAscended);
-        return a.setScale(3, RoundingMode.UP).floatValue();
+        return roundAltitude(altitudeAscended);
     }
 
     /**
@@ -271,8 +306,43 @@ class Run {
      * @return The Run's altitude descended as defined in the database.
      */
     public float getAltitudeDescended() {
-        BigDecimal a = new BigDecimal(altitudeDescended);
-        return a.setScale(3, RoundingMode.UP).floatValue();
+        return roundAltitude(altitudeDescended);
+    }
+
+    /**
+     * Retrieves the data points the Run was imported from, in the order they were recorded.
+     *
+     * @return The Run's samples as stored in the database. Empty for runs imported before samples were kept, \em null
+     *         if they could not be read.
+     */
+    public RunSamples getSamples() {
+        return dbManager.loadRunSamples(id);
+    }
+
+    /**
+     * Retrieves the data points the Run was imported from into off-heap memory. See SampleArena.
+     *
+     * @param arena The arena to allocate the samples from.
+     *
+     * @return The Run's samples as stored in the database, readable until \em arena is reset or closed.
+     */
+    public OffHeapRunSamples getSamples(final SampleArena arena) {
+        return dbManager.loadRunSamples(id, arena);
+    }
+
+    /**
+     * Rounds an altitude (in metres) away from zero to the nearest millimetre, as it is shown to the user.
+     *
+     * This gives the same result as BigDecimal#setScale(3, RoundingMode.UP) without allocating: a float has a 24 bit
+     * significand, so multiplying it by 1000 in double precision is exact, and only the final division rounds.
+     *
+     * @param altitude The altitude to round.
+     *
+     * @return The rounded altitude.
+     */
+    static float roundAltitude(final float altitude) {
+        final double millimetres = altitude * 1000.0;
+        return (float) ((millimetres >= 0 ? Math.ceil(millimetres) : Math.floor(millimetres)) / 1000.0);
     }
 
     /**
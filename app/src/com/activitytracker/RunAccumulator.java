@@ -0,0 +1,160 @@
+package com.activitytracker;
+
+import java.util.Date;
+
+/**
+ * Holds the state of the run currently being imported so that data points can be folded into it without touching
+ * the database.
+ *
+ * Each data point in an input file carries the cumulative duration and distance of the run and the user's current
+ * altitude relative to where the run began. The accumulator keeps the latest duration and distance, and turns the
+ * sequence of relative altitudes into a cumulative altitude climbed and descended.
+ *
+ * GPS altitude readings jitter by a metre or so between samples, and counting every small rise and fall inflates
+ * both totals. To compensate, the accumulator only counts a change in altitude once the user has moved at least
+ * RunAccumulator#altitudeThreshold metres away from the last altitude that was counted. A threshold of \em 0 counts
+ * every change, as Run#newRunDataPoint() does.
+ */
+class RunAccumulator {
+    /**
+     * The altitude threshold (in metres) used when none is specified; every change in altitude is counted.
+     */
+    static final float DEFAULT_ALTITUDE_THRESHOLD = 0f;
+
+    /**
+     * The minimum change in altitude (in metres) from RunAccumulator#referenceAltitude that is counted as a climb
+     * or descent.
+     */
+    private final float altitudeThreshold;
+    /**
+     * The ID of the run in the Runs table, or \em 0 if the run has not been written to the database yet.
+     */
+    private int rID;
+    /**
+     * The date the run took place.
+     */
+    private Date date;
+    /**
+     * The length of the run in seconds, as of the latest data point.
+     */
+    private float duration;
+    /**
+     * The distance (in metres) the user has run, as of the latest data point.
+     */
+    private float distance;
+    /**
+     * The cumulative altitude (in metres) climbed in the run.
+     */
+    private float altitudeAscended;
+    /**
+     * The cumulative altitude (in metres) descended in the run.
+     */
+    private float altitudeDescended;
+    /**
+     * The relative altitude (in metres) at which the last climb or descent was counted.
+     */
+    private float referenceAltitude;
+    /**
+     * The number of data points added since the run was started or resumed.
+     */
+    private int points;
+
+    /**
+     * @param altitudeThreshold The minimum change in altitude (in metres) that is counted as a climb or descent.
+     *                          Must not be negative.
+     */
+    RunAccumulator(final float altitudeThreshold) {
+        if (!(altitudeThreshold >= 0f)) {
+            throw new IllegalArgumentException("Altitude threshold must not be negative.");
+        }
+
+        this.altitudeThreshold = altitudeThreshold;
+    }
+
+    /**
+     * Starts accumulating a new run that has not yet been written to the database, as happens when a (0, 0, 0)
+     * data point is read.
+     *
+     * @param date The date the run took place.
+     */
+    void start(final Date date) {
+        resume(0, date, 0f, 0f, 0f, 0f);
+    }
+
+    /**
+     * Continues accumulating a run that already exists in the database, as happens when an input file does not
+     * begin with a (0, 0, 0) data point.
+     *
+     * @param rID The ID of the existing run.
+     * @param date The date of the existing run.
+     * @param duration The existing run's duration in seconds.
+     * @param distance The existing run's distance in metres.
+     * @param altitudeAscended The existing run's cumulative altitude climbed in metres.
+     * @param altitudeDescended The existing run's cumulative altitude descended in metres.
+     */
+    void resume(final int rID, final Date date, final float duration, final float distance,
+                final float altitudeAscended, final float altitudeDescended) {
+        this.rID = rID;
+        this.date = date;
+        this.duration = duration;
+        this.distance = distance;
+        this.altitudeAscended = altitudeAscended;
+        this.altitudeDescended = altitudeDescended;
+        this.referenceAltitude = altitudeAscended - altitudeDescended;
+        this.points = 0;
+    }
+
+    /**
+     * Folds a data point into the run.
+     *
+     * @param duration The cumulative length of the run in seconds.
+     * @param distance The cumulative distance (in metres) the user has run.
+     * @param altitude The user's altitude (in metres) relative to where the run began.
+     */
+    void add(final float duration, final float distance, final float altitude) {
+        this.duration = duration;
+        this.distance = distance;
+
+        if (altitude - this.referenceAltitude >= this.altitudeThreshold) {
+            this.altitudeAscended += altitude - this.referenceAltitude;
+            this.referenceAltitude = altitude;
+        }
+        else if (this.referenceAltitude - altitude >= this.altitudeThreshold) {
+            this.altitudeDescended += this.referenceAltitude - altitude;
+            this.referenceAltitude = altitude;
+        }
+
+        ++this.points;
+    }
+
+    int getID() {
+        return this.rID;
+    }
+
+    Date getDate() {
+        return this.date;
+    }
+
+    float getDuration() {
+        return this.duration;
+    }
+
+    float getDistance() {
+        return this.distance;
+    }
+
+    float getAltitudeAscended() {
+        return this.altitudeAscended;
+    }
+
+    float getAltitudeDescended() {
+        return this.altitudeDescended;
+    }
+
+    /**
+     * @return The number of data points added since the run was started or resumed.
+     */
+    int getPointCount() {
+        return this.points;
+    }
+}
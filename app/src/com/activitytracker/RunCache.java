@@ -0,0 +1,570 @@
+package com.activitytracker;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, least recently used cache of what DBManager reads about runs: the row of each run (a
+ * RunCache.Summary) and the results of the queries over a user's runs within a date range (see RunCache.RangeKey).
+ *
+ * The main window asks for the same runs over and over: every refresh of the table and every click of "Go" reads the
+ * same pages and counts again, and building a Run from its ID reads its row once per attribute. With the cache these
+ * are read from the database once, and again only after a run they depend on has changed.
+ *
+ * The cache holds at most RunCache#maxEntries entries and about RunCache#maxBytes bytes (an estimate, see
+ * RunCache.Kind). When either bound is exceeded the least recently used entries are evicted.
+ *
+ * A write to a run of a user at a given date invalidates only that run's summary and the user's ranges that contain
+ * the date (see RunCache#invalidateRun()). Because other threads read the last committed state of the database, a
+ * result read before the write is committed could otherwise be put back in the meantime, so:
+ *  - every invalidation increments a version (one per user for ranges, one for all summaries), and a result is only
+ *    cached if the version it was read at is still current (see RunCache#put()); and
+ *  - the invalidations of a transaction are repeated once it has been committed or rolled back (see
+ *    RunCache#transactionEnded()).
+ *
+ * Statistics (RunCache.Kind#STATS and RunCache.Kind#ROLLED_UP_STATS) also expire RunCache#timeToLive after they
+ * were read, so that a dashboard left open does not show the same numbers forever should the database be changed
+ * other than through DBManager.
+ *
+ * Results are shared between callers, so cached values must not be modified. All methods are thread safe.
+ */
+final class RunCache {
+    /**
+     * The largest number of entries cached when none is specified.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 4096;
+    /**
+     * The largest (estimated) size of the cached entries, in bytes, when none is specified.
+     */
+    static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    /**
+     * How long statistics are cached for when no time is specified, in milliseconds.
+     */
+    static final long DEFAULT_STATS_TIME_TO_LIVE = 5 * 60 * 1000;
+    /**
+     * The estimated size of an entry, in bytes, apart from the rows of its value: the map entry, the key and the
+     * value object.
+     */
+    private static final long ENTRY_BYTES = 128;
+
+    /**
+     * The query whose result a range entry holds, along with the estimated size of each row of the result and
+     * whether the result expires.
+     */
+    enum Kind {
+        /**
+         * DBManager#getRuns(): a Vector of boxed run IDs.
+         */
+        RUN_IDS(20),
+        /**
+         * DBManager#loadRuns(): a Vector of Run objects, each with a Date.
+         */
+        RUNS(96),
+        /**
+         * DBManager#loadRunColumns(): a RunColumns.
+         */
+        RUN_COLUMNS(32),
+        /**
+         * DBManager#countRuns(): an Integer.
+         */
+        RUN_COUNT(0),
+        /**
+         * DBManager#loadRunPageKeys(): a Vector of RunKey objects.
+         */
+        PAGE_KEYS(32),
+        /**
+         * DBManager#loadRunPage(): a RunColumns.
+         */
+        PAGE(32),
+        /**
+         * DBManager#getRunStats(): a RunStats.
+         */
+        STATS(512, true),
+        /**
+         * DBManager#getRolledUpRunStats(): a RunStats.
+         */
+        ROLLED_UP_STATS(512, true);
+
+        /**
+         * The estimated size of each row of the result, in bytes.
+         */
+        private final long rowBytes;
+        /**
+         * True if the result expires RunCache#timeToLive after it is read.
+         */
+        private final boolean expires;
+
+        Kind(final long rowBytes) {
+            this(rowBytes, false);
+        }
+
+        Kind(final long rowBytes, final boolean expires) {
+            this.rowBytes = rowBytes;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Identifies the result of a query over the runs of a user within a date range.
+     */
+    static final class RangeKey {
+        final Kind kind;
+        final int userID;
+        final long start;
+        final long end;
+        /**
+         * For RunCache.Kind#PAGE, the key of the first run of the page (or \em null), otherwise \em null.
+         */
+        final RunKey first;
+        /**
+         * For RunCache.Kind#PAGE_KEYS, the page size; for RunCache.Kind#PAGE, the largest number of runs returned;
+         * otherwise \em 0.
+         */
+        final int limit;
+
+        RangeKey(final Kind kind, final int userID, final long start, final long end, final RunKey first,
+                 final int limit) {
+            this.kind = kind;
+            this.userID = userID;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+            this.limit = limit;
+        }
+
+        RangeKey(final Kind kind, final int userID, final long start, final long end) {
+            this(kind, userID, start, end, null, 0);
+        }
+
+        /**
+         * @return True if a run at \em date could be part of the result.
+         */
+        boolean contains(final long date) {
+            return date >= start && date <= end;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RangeKey)) {
+                return false;
+            }
+            final RangeKey other = (RangeKey) o;
+            return kind == other.kind && userID == other.userID && start == other.start && end == other.end
+                    && limit == other.limit && (first == null ? other.first == null
+                    : other.first != null && first.date == other.first.date && first.id == other.first.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, userID, start, end, limit,
+                    first == null ? null : first.date, first == null ? null : first.id);
+        }
+    }
+
+    /**
+     * A run's row of the Runs table.
+     */
+    static final class Summary {
+        final int id;
+        final int userID;
+        /**
+         * The date of the run, in milliseconds since the epoch.
+         */
+        final long date;
+        final float duration;
+        final float distance;
+        final float altitudeAscended;
+        final float altitudeDescended;
+
+        Summary(final int id, final int userID, final long date, final float duration, final float distance,
+                final float altitudeAscended, final float altitudeDescended) {
+            this.id = id;
+            this.userID = userID;
+            this.date = date;
+            this.duration = duration;
+            this.distance = distance;
+            this.altitudeAscended = altitudeAscended;
+            this.altitudeDescended = altitudeDescended;
+        }
+
+        /**
+         * @return The value of \em attribute, or \em 0 if it is not one of the run's float columns.
+         */
+        float get(final RunAttribute attribute) {
+            switch (attribute) {
+                case DURATION:
+                    return duration;
+                case DISTANCE:
+                    return distance;
+                case ALTITUDE_ASCENDED:
+                    return altitudeAscended;
+                case ALTITUDE_DESCENDED:
+                    return altitudeDescended;
+                default:
+                    return 0.0f;
+            }
+        }
+    }
+
+    /**
+     * A cached value, its estimated size and when it expires.
+     */
+    private static final class Entry {
+        final Object value;
+        final long bytes;
+        /**
+         * The System#nanoTime() at which the entry expires, if RunCache.Entry#expires.
+         */
+        final long deadline;
+        final boolean expires;
+
+        Entry(final Object value, final long bytes) {
+            this(value, bytes, 0, false);
+        }
+
+        Entry(final Object value, final long bytes, final long deadline, final boolean expires) {
+            this.value = value;
+            this.bytes = bytes;
+            this.deadline = deadline;
+            this.expires = expires;
+        }
+
+        boolean isExpired(final long now) {
+            return expires && now - deadline >= 0;
+        }
+    }
+
+    /**
+     * The largest number of entries.
+     */
+    private final int maxEntries;
+    /**
+     * The largest estimated size of the entries, in bytes.
+     */
+    private final long maxBytes;
+    /**
+     * Every entry, keyed by run ID (an Integer) for summaries and by RangeKey for ranges, from least to most
+     * recently used.
+     */
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The keys of the cached ranges of each user, so that a write only looks at its own user's ranges.
+     */
+    private final Map<Integer, Set<RangeKey>> rangesByUser = new HashMap<>();
+    /**
+     * The version of each user's ranges. Users that have never been written to are at version 0.
+     */
+    private final Map<Integer, Long> userVersions = new HashMap<>();
+    /**
+     * The version of the summaries.
+     */
+    private long summaryVersion = 0;
+    /**
+     * How long entries that expire are cached for, in nanoseconds.
+     */
+    private long timeToLive = TimeUnit.MILLISECONDS.toNanos(DEFAULT_STATS_TIME_TO_LIVE);
+    /**
+     * The runs (user ID and date) written in the current transaction, to be invalidated again when it ends.
+     */
+    private final Map<Integer, Set<Long>> pendingRuns = new HashMap<>();
+    /**
+     * The IDs of the runs whose rows were changed in the current transaction.
+     */
+    private final Set<Integer> pendingSummaries = new HashSet<>();
+    /**
+     * The estimated size of the entries, in bytes.
+     */
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a cache with room for RunCache#DEFAULT_MAX_ENTRIES entries and RunCache#DEFAULT_MAX_BYTES bytes.
+     */
+    RunCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxEntries The largest number of entries to cache. If this is \em 0, nothing is cached.
+     * @param maxBytes The largest estimated size of the entries to cache, in bytes.
+     */
+    RunCache(final int maxEntries, final long maxBytes) {
+        this.maxEntries = Math.max(maxEntries, 0);
+        this.maxBytes = Math.max(maxBytes, 0);
+    }
+
+    /**
+     * Looks up the result of a range query.
+     *
+     * @return The cached result, or \em null if it is not cached.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> T get(final RangeKey key) {
+        return (T) lookup(key);
+    }
+
+    /**
+     * Looks up the row of a run.
+     *
+     * @return The cached row, or \em null if it is not cached.
+     */
+    synchronized Summary getSummary(final int rID) {
+        return (Summary) lookup(rID);
+    }
+
+    /**
+     * @return The version to pass to RunCache#put() for a range query of user \em userID that is about to be read.
+     */
+    synchronized long version(final int userID) {
+        return userVersions.getOrDefault(userID, 0L);
+    }
+
+    /**
+     * @return The version to pass to RunCache#putSummary() for a run row that is about to be read.
+     */
+    synchronized long summaryVersion() {
+        return summaryVersion;
+    }
+
+    /**
+     * Caches the result of a range query, unless a run in the user's ranges has been written since \em version was
+     * obtained from RunCache#version().
+     *
+     * @param key The query.
+     * @param value The result. It must not be modified afterwards.
+     * @param version The version of the user's ranges before the query was read.
+     */
+    synchronized void put(final RangeKey key, final Object value, final long version) {
+        if (version != userVersions.getOrDefault(key.userID, 0L)) {
+            return;
+        }
+        final long bytes = ENTRY_BYTES + rows(value) * key.kind.rowBytes;
+        final Entry entry;
+        if (key.kind.expires) {
+            if (timeToLive == 0) {
+                return;
+            }
+            entry = new Entry(value, bytes, System.nanoTime() + timeToLive, true);
+        }
+        else {
+            entry = new Entry(value, bytes);
+        }
+        if (insert(key, entry)) {
+            rangesByUser.computeIfAbsent(key.userID, id -> new HashSet<>()).add(key);
+            evict();
+        }
+    }
+
+    /**
+     * Caches the row of a run, unless a run's row has been changed since \em version was obtained from
+     * RunCache#summaryVersion().
+     */
+    synchronized void putSummary(final Summary summary, final long version) {
+        if (version == summaryVersion && insert(summary.id, new Entry(summary, ENTRY_BYTES))) {
+            evict();
+        }
+    }
+
+    /**
+     * Sets how long statistics are cached for. Statistics that are already cached keep the time they were given.
+     *
+     * @param millis The time to live of statistics, in milliseconds. If this is \em 0, statistics are not cached.
+     */
+    synchronized void setTimeToLive(final long millis) {
+        timeToLive = TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+    }
+
+    /**
+     * Invalidates the ranges of user \em userID that contain \em date, for a run at \em date that has been added or
+     * changed.
+     */
+    synchronized void invalidateRun(final int userID, final long date) {
+        dropRanges(userID, date);
+        pendingRuns.computeIfAbsent(userID, id -> new HashSet<>()).add(date);
+    }
+
+    /**
+     * Invalidates the row of run \em rID, which has been changed.
+     */
+    synchronized void invalidateSummary(final int rID) {
+        dropSummary(rID);
+        pendingSummaries.add(rID);
+    }
+
+    /**
+     * Repeats the invalidations made since the last call, once the transaction they were made in has been committed
+     * or rolled back. Results cached while it was open may have been read from before its changes.
+     */
+    synchronized void transactionEnded() {
+        for (final Map.Entry<Integer, Set<Long>> pending : pendingRuns.entrySet()) {
+            for (final long date : pending.getValue()) {
+                dropRanges(pending.getKey(), date);
+            }
+        }
+        for (final int rID : pendingSummaries) {
+            dropSummary(rID);
+        }
+        pendingRuns.clear();
+        pendingSummaries.clear();
+    }
+
+    /**
+     * Removes every entry, \em e.g., when another database is opened. The counters are kept.
+     */
+    synchronized void clear() {
+        entries.clear();
+        rangesByUser.clear();
+        pendingRuns.clear();
+        pendingSummaries.clear();
+        bytes = 0;
+        // Results being read now must not be cached either
+        for (final Map.Entry<Integer, Long> version : userVersions.entrySet()) {
+            version.setValue(version.getValue() + 1);
+        }
+        ++summaryVersion;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The estimated size of the entries, in bytes.
+     */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The number of lookups that found a cached entry.
+     */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups that did not find a cached entry.
+     */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of entries removed to keep the cache within its bounds.
+     */
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    private Object lookup(final Object key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            ++misses;
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key);
+            bytes -= entry.bytes;
+            forgetRange((RangeKey) key);
+            ++misses;
+            return null;
+        }
+        ++hits;
+        return entry.value;
+    }
+
+    /**
+     * Adds or replaces an entry.
+     *
+     * @return False if the entry could never fit in the cache, in which case it is not added.
+     */
+    private boolean insert(final Object key, final Entry entry) {
+        if (maxEntries == 0 || entry.bytes > maxBytes) {
+            return false;
+        }
+        final Entry old = entries.put(key, entry);
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+        bytes += entry.bytes;
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is within its bounds.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            final Map.Entry<Object, Entry> eldest = it.next();
+            it.remove();
+            bytes -= eldest.getValue().bytes;
+            if (eldest.getKey() instanceof RangeKey) {
+                forgetRange((RangeKey) eldest.getKey());
+            }
+            ++evictions;
+        }
+    }
+
+    private void dropRanges(final int userID, final long date) {
+        userVersions.merge(userID, 1L, Long::sum);
+        final Set<RangeKey> ranges = rangesByUser.get(userID);
+        if (ranges == null) {
+            return;
+        }
+        for (final Iterator<RangeKey> it = ranges.iterator(); it.hasNext(); ) {
+            final RangeKey key = it.next();
+            if (key.contains(date)) {
+                it.remove();
+                bytes -= entries.remove(key).bytes;
+            }
+        }
+        if (ranges.isEmpty()) {
+            rangesByUser.remove(userID);
+        }
+    }
+
+    private void dropSummary(final int rID) {
+        ++summaryVersion;
+        final Entry entry = entries.remove(rID);
+        if (entry != null) {
+            bytes -= entry.bytes;
+        }
+    }
+
+    private void forgetRange(final RangeKey key) {
+        final Set<RangeKey> ranges = rangesByUser.get(key.userID);
+        if (ranges != null && ranges.remove(key) && ranges.isEmpty()) {
+            rangesByUser.remove(key.userID);
+        }
+    }
+
+    /**
+     * @return The number of rows in a range query's result.
+     */
+    private static int rows(final Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).size();
+        }
+        if (value instanceof RunColumns) {
+            return ((RunColumns) value).size();
+        }
+        return 1;
+    }
+}
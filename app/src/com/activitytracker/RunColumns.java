@@ -0,0 +1,211 @@
+package com.activitytracker;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A set of runs stored column by column in parallel primitive arrays, rather than as one Run object per run.
+ *
+ * A Run carries a DBManager reference, a boxed Date and its own object header, and the runs of a Vector are reached
+ * through a synchronized accessor and a pointer each. A RunColumns instead stores each run as one element of each
+ * column: an \em int ID, a \em long date and five \em floats (about 32 bytes per run). Loops over a single column
+ * (\em e.g., summing distances in RunStats) read contiguous memory, which the JIT can unroll and vectorize.
+ *
+ * Runs are appended with RunColumns#add() (the arrays grow as needed) and read by index. The column arrays returned
+ * by RunColumns#getColumn() are the backing arrays themselves: only the first RunColumns#size() elements are valid,
+ * and they must not be modified.
+ */
+final class RunColumns {
+    /**
+     * The number of runs the arrays are sized for when no capacity is given.
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * The number of runs in the set.
+     */
+    private int size = 0;
+    /**
+     * The ID of each run.
+     */
+    private int[] ids;
+    /**
+     * The date of each run, in milliseconds since the epoch.
+     */
+    private long[] dates;
+    /**
+     * The length of each run in seconds.
+     */
+    private float[] durations;
+    /**
+     * The distance (in metres) of each run.
+     */
+    private float[] distances;
+    /**
+     * The average speed (in metres per second) of each run, or \em NaN if the run has a duration of zero.
+     */
+    private float[] speeds;
+    /**
+     * The altitude (in metres) climbed during each run.
+     */
+    private float[] altitudesAscended;
+    /**
+     * The altitude (in metres) descended during each run.
+     */
+    private float[] altitudesDescended;
+
+    /**
+     * Creates an empty set of runs.
+     */
+    RunColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty set of runs with room for \em capacity runs before the arrays must grow.
+     *
+     * @param capacity The number of runs expected.
+     */
+    RunColumns(final int capacity) {
+        final int n = Math.max(capacity, 1);
+        ids = new int[n];
+        dates = new long[n];
+        durations = new float[n];
+        distances = new float[n];
+        speeds = new float[n];
+        altitudesAscended = new float[n];
+        altitudesDescended = new float[n];
+    }
+
+    /**
+     * Appends a run to the set.
+     *
+     * @param rID The run's unique ID.
+     * @param date The date the run took place, in milliseconds since the epoch.
+     * @param duration The length of the run in seconds.
+     * @param distance The distance (in metres) that the user ran.
+     * @param altitudeAscended The altitude (in metres) that the user climbed.
+     * @param altitudeDescended The altitude (in metres) that the user descended.
+     */
+    void add(final int rID, final long date, final float duration, final float distance,
+             final float altitudeAscended, final float altitudeDescended) {
+        if (size == ids.length) {
+            grow();
+        }
+        ids[size] = rID;
+        dates[size] = date;
+        durations[size] = duration;
+        distances[size] = distance;
+        speeds[size] = duration == 0f ? Float.NaN : distance / duration;
+        altitudesAscended[size] = altitudeAscended;
+        altitudesDescended[size] = altitudeDescended;
+        ++size;
+    }
+
+    private void grow() {
+        final int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        dates = Arrays.copyOf(dates, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        distances = Arrays.copyOf(distances, capacity);
+        speeds = Arrays.copyOf(speeds, capacity);
+        altitudesAscended = Arrays.copyOf(altitudesAscended, capacity);
+        altitudesDescended = Arrays.copyOf(altitudesDescended, capacity);
+    }
+
+    /**
+     * @return The number of runs in the set.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return True if the set holds no runs, false otherwise.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the backing array of the column for \em attribute. Only the first RunColumns#size() elements are valid.
+     *
+     * @param attribute The attribute whose values we want.
+     *
+     * @return The column's backing array. Must not be modified.
+     */
+    float[] getColumn(final RunAttribute attribute) {
+        switch (attribute) {
+            case DURATION:
+                return durations;
+            case DISTANCE:
+                return distances;
+            case SPEED:
+                return speeds;
+            case ALTITUDE_ASCENDED:
+                return altitudesAscended;
+            case ALTITUDE_DESCENDED:
+                return altitudesDescended;
+            default:
+                throw new IllegalArgumentException("Unknown run attribute " + attribute + ".");
+        }
+    }
+
+    int getID(final int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    /**
+     * @return The date of the run at \em index, in milliseconds since the epoch.
+     */
+    long getDate(final int index) {
+        checkIndex(index);
+        return dates[index];
+    }
+
+    float getDuration(final int index) {
+        checkIndex(index);
+        return durations[index];
+    }
+
+    float getDistance(final int index) {
+        checkIndex(index);
+        return distances[index];
+    }
+
+    float getSpeed(final int index) {
+        checkIndex(index);
+        return speeds[index];
+    }
+
+    float getAltitudeAscended(final int index) {
+        checkIndex(index);
+        return altitudesAscended[index];
+    }
+
+    float getAltitudeDescended(final int index) {
+        checkIndex(index);
+        return altitudesDescended[index];
+    }
+
+    /**
+     * Creates a Run object for the run at \em index, for code that still works with Run objects.
+     *
+     * @param dbManager The connection to the database.
+     * @param index The index of the run in the set.
+     *
+     * @return A new Run with the run's values.
+     */
+    Run toRun(final DBManager dbManager, final int index) {
+        checkIndex(index);
+        return new Run(dbManager, ids[index], new Date(dates[index]), durations[index], distances[index],
+                altitudesAscended[index], altitudesDescended[index]);
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for " + size + " runs.");
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.activitytracker;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/**
+ * Parses a file of run data points by memory-mapping it and reading each field straight from the mapped bytes.
+ *
+ * Each line of an input file has the form \em duration,distance,altitude,dd-MM-yyyy. Reading such a file with
+ * BufferedReader#readLine() and String#split() allocates a line, an array and four strings per data point before any
+ * number is parsed. Here the file is mapped in regions of at most RunFileParser#MAP_REGION_SIZE bytes and the
+ * numeric fields are parsed directly into primitives. Consecutive data points almost always share a date, so the
+ * date field is only parsed (with the same SimpleDateFormat pattern as before) when its bytes differ from those of
+ * the previous line.
+ */
+class RunFileParser {
+    /**
+     * Receives the data points parsed from a file, in order.
+     */
+    interface DataPointHandler {
+        /**
+         * @param duration The cumulative length of the run in seconds.
+         * @param distance The cumulative distance (in metres) the user has run.
+         * @param altitude The user's altitude (in metres) relative to where the run began.
+         * @param date The date of the run in milliseconds since the epoch.
+         *
+         * @return True to continue parsing, False to stop.
+         */
+        boolean dataPoint(float duration, float distance, float altitude, long date);
+    }
+
+    /**
+     * The largest number of bytes of the file that are mapped at once. No line may be longer than this.
+     */
+    static final int MAP_REGION_SIZE = 64 * 1024 * 1024;
+    /**
+     * The longest date field that is cached. Longer fields are still parsed, just never cached.
+     */
+    private static final int MAX_DATE_LENGTH = 32;
+    /**
+     * Powers of ten that can be represented exactly as doubles, used to scale parsed mantissas.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The format of the date field.
+     */
+    private final DateFormat dateFormat = new SimpleDateFormat("dd-MM-yyyy");
+    /**
+     * The bytes of the last date field that was parsed.
+     */
+    private final byte[] lastDateBytes = new byte[MAX_DATE_LENGTH];
+    /**
+     * The number of valid bytes in RunFileParser#lastDateBytes, or \em -1 if nothing is cached.
+     */
+    private int lastDateLength = -1;
+    /**
+     * The last date that was parsed, in milliseconds since the epoch.
+     */
+    private long lastDate = 0;
+    /**
+     * The end of the field most recently parsed by RunFileParser#parseFloat(), relative to the mapped region.
+     */
+    private int fieldEnd;
+
+    /**
+     * Parses every line of a file and passes its data point to \em handler.
+     *
+     * @param filePath The file to be parsed.
+     * @param handler Receives each data point in order.
+     *
+     * @return The number of data points passed to \em handler.
+     *
+     * @throws IOException Thrown if the file cannot be read, or if a line is malformed.
+     */
+    int parse(final String filePath, final DataPointHandler handler) throws IOException {
+        int lineNumber = 0;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long regionStart = 0;
+
+            while (regionStart < size) {
+                final int regionLength = (int) Math.min(MAP_REGION_SIZE, size - regionStart);
+                final boolean lastRegion = regionStart + regionLength == size;
+                final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionLength);
+
+                int lineStart = 0;
+                while (lineStart < regionLength) {
+                    int lineEnd = indexOf(buf, (byte) '\n', lineStart, regionLength);
+                    if (lineEnd < 0) {
+                        if (!lastRegion) {
+                            break; // The line continues in the next region
+                        }
+                        lineEnd = regionLength;
+                    }
+
+                    int contentEnd = lineEnd;
+                    if (contentEnd > lineStart && buf.get(contentEnd - 1) == '\r') {
+                        --contentEnd;
+                    }
+
+                    if (contentEnd > lineStart) {
+                        ++lineNumber;
+                        if (!parseLine(buf, lineStart, contentEnd, lineNumber, handler)) {
+                            return lineNumber;
+                        }
+                    }
+                    lineStart = lineEnd + 1;
+                }
+
+                if (lineStart == 0 && !lastRegion) {
+                    throw new IOException("Line " + (lineNumber + 1) + " is longer than " + MAP_REGION_SIZE +
+                            " bytes.");
+                }
+                regionStart += Math.min(lineStart, regionLength);
+            }
+        }
+
+        return lineNumber;
+    }
+
+    /**
+     * Parses the fields of a single line and passes them to \em handler.
+     */
+    private boolean parseLine(final MappedByteBuffer buf, final int start, final int end, final int lineNumber,
+                              final DataPointHandler handler) throws IOException {
+        final float duration = parseFloat(buf, start, end, lineNumber);
+        final float distance = parseFloat(buf, fieldEnd + 1, end, lineNumber);
+        final float altitude = parseFloat(buf, fieldEnd + 1, end, lineNumber);
+        final int dateStart = fieldEnd + 1;
+
+        if (dateStart > end) {
+            throw new IOException("Line " + lineNumber + " is missing its date.");
+        }
+        int dateEnd = indexOf(buf, (byte) ',', dateStart, end);
+        if (dateEnd < 0) {
+            dateEnd = end;
+        }
+
+        return handler.dataPoint(duration, distance, altitude, parseDate(buf, dateStart, dateEnd));
+    }
+
+    /**
+     * Parses a decimal number that starts at \em start and ends at the next comma (or \em end), and records where
+     * it ended in RunFileParser#fieldEnd.
+     *
+     * Plain decimals with up to eighteen significant digits are parsed without allocating; anything else
+     * (\em e.g., exponents) falls back to Float#parseFloat().
+     */
+    private float parseFloat(final MappedByteBuffer buf, final int start, final int end, final int lineNumber)
+            throws IOException {
+        if (start > end) {
+            throw new IOException("Line " + lineNumber + " has too few fields.");
+        }
+
+        int stop = indexOf(buf, (byte) ',', start, end);
+        if (stop < 0) {
+            stop = end;
+        }
+        fieldEnd = stop;
+
+        int i = start;
+        boolean negative = false;
+        if (i < stop && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i) == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean simple = i < stop;
+        for (; i < stop; ++i) {
+            final byte b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                if (++digits > 18) {
+                    simple = false;
+                    break;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenPoint) {
+                    ++fractionDigits;
+                }
+            }
+            else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            }
+            else {
+                simple = false;
+                break;
+            }
+        }
+
+        if (simple && digits > 0 && fractionDigits < POWERS_OF_TEN.length) {
+            final double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return (float) (negative ? -value : value);
+        }
+
+        final String field = decode(buf, start, stop);
+        try {
+            return Float.parseFloat(field.trim());
+        }
+        catch (final NumberFormatException e) {
+            throw new IOException("Line " + lineNumber + " has an invalid number '" + field + "'.");
+        }
+    }
+
+    /**
+     * Parses the date field, reusing the previous result if the field's bytes are unchanged.
+     *
+     * As in the line-by-line importer, a date that cannot be parsed is reported and the previous date is used.
+     */
+    private long parseDate(final MappedByteBuffer buf, final int start, final int end) {
+        final int length = end - start;
+
+        if (length == lastDateLength) {
+            int i = 0;
+            while (i < length && buf.get(start + i) == lastDateBytes[i]) {
+                ++i;
+            }
+            if (i == length) {
+                return lastDate;
+            }
+        }
+
+        try {
+            lastDate = dateFormat.parse(decode(buf, start, end)).getTime();
+        }
+        catch (final ParseException e) {
+            System.err.println(e.getMessage());
+        }
+
+        if (length <= MAX_DATE_LENGTH) {
+            for (int i = 0; i < length; ++i) {
+                lastDateBytes[i] = buf.get(start + i);
+            }
+            lastDateLength = length;
+        }
+        else {
+            lastDateLength = -1;
+        }
+
+        return lastDate;
+    }
+
+    /**
+     * @return The index of the first occurrence of \em b in [\em from, \em to), or \em -1 if there is none.
+     */
+    private static int indexOf(final MappedByteBuffer buf, final byte b, final int from, final int to) {
+        for (int i = from; i < to; ++i) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the bytes in [\em start, \em end) into a String. Only used on the slow paths.
+     */
+    private static String decode(final MappedByteBuffer buf, final int start, final int end) {
+        final byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = buf.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
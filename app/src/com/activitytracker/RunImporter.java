@@ -0,0 +1,261 @@
+package com.activitytracker;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Imports a file of run data points into the database using explicit transactions and JDBC batches.
+ *
+ * Run#newRunDataPoint() handles one data point at a time in auto-commit mode, which means every line of an input
+ * file becomes several queries and its own transaction. A RunImporter instead folds the data points of each run
+ * into a RunAccumulator in memory and only writes to the Runs table at run boundaries (\em i.e., when a (0, 0, 0)
+ * data point or the end of the file is reached). The file itself is read by a RunFileParser. Completed runs are
+ * queued with DBManager#addNewRunToBatch() and executed and committed every RunImporter#batchSize runs.
+ *
+ * The data points of each run are also kept, in a RunSamples, and stored compactly with the run (see
+ * RunSampleCodec) in the same transaction: those of a new run are queued with its row, and those of a resumed run
+ * are appended to the ones already stored when it is sealed.
+ *
+ * The ID of the last run inserted is recorded as the user's last run, so that a later file which does not begin
+ * with (0, 0, 0) continues it. It is written to the Users table with each batch, after the batch's runs and in the
+ * same transaction (see User#flushLastRID()).
+ */
+class RunImporter {
+    /**
+     * The number of completed runs written per batch (and per transaction) when none is specified.
+     */
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The database connection with which the importer interacts.
+     */
+    private final DBManager dbManager;
+    /**
+     * The user whose runs are being imported.
+     */
+    private final User user;
+    /**
+     * The number of completed runs to queue before the batch is executed and the transaction committed.
+     */
+    private final int batchSize;
+    /**
+     * The run that data points are currently being folded into.
+     */
+    private final RunAccumulator run;
+    /**
+     * The data points of RunImporter#run: those already stored for a resumed run, followed by those added since.
+     */
+    private RunSamples samples = new RunSamples();
+    /**
+     * True if RunImporter#run holds a run (new or resumed) that has not been written yet.
+     */
+    private boolean runOpen;
+    /**
+     * The number of completed runs queued since the last batch was executed.
+     */
+    private int pending;
+    /**
+     * Set when a database error stops the file from being parsed any further.
+     */
+    private boolean failed;
+
+    /**
+     * @param dbManager Database connection with with the importer interacts.
+     * @param user A User object corresponding to the user whose runs are being imported.
+     * @param batchSize The number of completed runs to write per batch and per transaction. Must be positive.
+     */
+    RunImporter(final DBManager dbManager, final User user, final int batchSize) {
+        this(dbManager, user, batchSize, RunAccumulator.DEFAULT_ALTITUDE_THRESHOLD);
+    }
+
+    /**
+     * @param dbManager Database connection with with the importer interacts.
+     * @param user A User object corresponding to the user whose runs are being imported.
+     * @param batchSize The number of completed runs to write per batch and per transaction. Must be positive.
+     * @param altitudeThreshold The minimum change in altitude (in metres) that is counted as a climb or descent.
+     *                          See RunAccumulator.
+     */
+    RunImporter(final DBManager dbManager, final User user, final int batchSize, final float altitudeThreshold) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+
+        this.dbManager = dbManager;
+        this.user = user;
+        this.batchSize = batchSize;
+        this.run = new RunAccumulator(altitudeThreshold);
+    }
+
+    /**
+     * Opens and iterates through a file, adding each line to the database as described in Run#newRunDataPoint().
+     *
+     * If the import fails part way through, the changes belonging to the batch that was being written are rolled
+     * back; batches that were already committed are kept.
+     *
+     * @param filePath The file to be iterated through.
+     *
+     * @return The number of data points that were imported.
+     *
+     * @throws IOException Thrown if there is an error reading or opening the file.
+     */
+    int importFile(final String filePath) throws IOException {
+        final long startTime = System.nanoTime();
+        final int rows;
+
+        // Data points before the first (0, 0, 0) line continue the user's last run
+        if (!resumeLastRun() || !this.dbManager.beginTransaction()) {
+            return 0;
+        }
+
+        try {
+            this.failed = false;
+            rows = new RunFileParser().parse(filePath, this::addDataPoint);
+
+            if (this.failed || !finish()) {
+                this.dbManager.rollbackTransaction();
+                this.user.discardLastRID();
+                return rows;
+            }
+        }
+        catch (final IOException | RuntimeException e) {
+            this.dbManager.rollbackTransaction();
+            this.user.discardLastRID();
+            throw e;
+        }
+        finally {
+            this.dbManager.endTransaction();
+        }
+
+        final double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(String.format("Imported %d data points in %.3f s (%.0f rows/sec).",
+                rows, seconds, rows / Math.max(seconds, 1e-9)));
+
+        return rows;
+    }
+
+    /**
+     * Loads the user's last run into RunImporter#run, if it exists, so that data points preceding the first
+     * (0, 0, 0) line of the file are added to it.
+     *
+     * @return True if there is no last run or it was loaded, False if its samples could not be read. The stored
+     *         samples are rewritten when the run is sealed, so the import must not go ahead without them.
+     */
+    private boolean resumeLastRun() {
+        final int rID = this.user.getLastRID();
+
+        this.runOpen = this.dbManager.runExists(rID);
+        if (this.runOpen) {
+            final RunSamples stored = this.dbManager.loadRunSamples(rID);
+            if (stored == null) {
+                this.runOpen = false;
+                return false;
+            }
+
+            this.run.resume(
+                    rID,
+                    this.dbManager.getRunDate(rID),
+                    this.dbManager.getRunFloatAttribute(RunAttribute.DURATION, rID),
+                    this.dbManager.getRunFloatAttribute(RunAttribute.DISTANCE, rID),
+                    this.dbManager.getRunFloatAttribute(RunAttribute.ALTITUDE_ASCENDED, rID),
+                    this.dbManager.getRunFloatAttribute(RunAttribute.ALTITUDE_DESCENDED, rID)
+            );
+            this.samples = stored;
+        }
+
+        return true;
+    }
+
+    /**
+     * Folds one data point into the current run, sealing it and starting a new run if the data point is (0, 0, 0).
+     * Used as the RunFileParser.DataPointHandler for the file.
+     *
+     * @return True if the data point was accepted, False if a database error occurred.
+     */
+    private boolean addDataPoint(final float duration, final float distance, final float altitude,
+                                 final long date) {
+        if (duration == 0f && distance == 0f && altitude == 0f) {
+            if (this.runOpen && !seal()) {
+                this.failed = true;
+                return false;
+            }
+
+            this.run.start(new Date(date));
+            this.samples.clear();
+            this.runOpen = true;
+            return true;
+        }
+
+        if (!this.runOpen) {
+            System.err.println("Data point is not preceded by the start of a run. No changes made.");
+            return true;
+        }
+
+        this.run.add(duration, distance, altitude);
+        this.samples.add(duration, distance, altitude);
+        return true;
+    }
+
+    /**
+     * Writes the current run to the database. A resumed run is updated in place; a new run is queued for insertion
+     * and the batch is executed and committed once RunImporter#batchSize runs are pending.
+     *
+     * @return True if the run was written or queued, False if a database error occurred.
+     */
+    private boolean seal() {
+        this.runOpen = false;
+
+        if (this.run.getID() != 0) {
+            if (this.run.getPointCount() > 0) {
+                this.dbManager.setRun(this.run.getID(), this.run.getDuration(), this.run.getDistance(),
+                        this.run.getAltitudeAscended(), this.run.getAltitudeDescended());
+                return this.dbManager.setRunSamples(this.run.getID(), this.samples);
+            }
+            return true;
+        }
+
+        // The samples are encoded as the row is queued, so the buffer can be reused for the next run
+        if (!this.dbManager.addNewRunToBatch(this.user.getID(), this.run.getDate(), this.run.getDuration(),
+                this.run.getDistance(), this.run.getAltitudeAscended(), this.run.getAltitudeDescended(),
+                this.samples)) {
+            return false;
+        }
+
+        return ++this.pending < this.batchSize || flush();
+    }
+
+    /**
+     * Writes the final run of the file, records the last run that was inserted as the user's last run, and commits
+     * everything that is pending.
+     *
+     * @return True if all changes were committed, False otherwise.
+     */
+    private boolean finish() {
+        if (this.runOpen && !seal()) {
+            return false;
+        }
+
+        return flush();
+    }
+
+    /**
+     * Executes any queued inserts and commits the current transaction. If any runs were inserted, the last of them
+     * is recorded as the user's last run in the same transaction, after the runs themselves.
+     *
+     * @return True if the batch was executed and committed, False otherwise.
+     */
+    private boolean flush() {
+        if (this.pending > 0) {
+            final int[] rIDs = this.dbManager.executeNewRunBatch();
+            if (rIDs == null) {
+                return false;
+            }
+            this.user.setLastRID(rIDs[rIDs.length - 1]);
+            if (!this.user.flushLastRID()) {
+                return false;
+            }
+        }
+        this.pending = 0;
+
+        return this.dbManager.commitTransaction();
+    }
+}
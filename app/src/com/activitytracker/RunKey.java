@@ -0,0 +1,23 @@
+package com.activitytracker;
+
+/**
+ * The position of a run in the order in which runs are listed: by date, and then by ID for runs on the same date.
+ *
+ * Used for keyset pagination (see DBManager#loadRunPage()): a page of runs is read by seeking to the key of its first
+ * run in the Runs table's (user_id, date) index, rather than by skipping over every run before it with \em OFFSET.
+ */
+final class RunKey {
+    /**
+     * The date of the run, in milliseconds since the epoch.
+     */
+    final long date;
+    /**
+     * The run's unique ID.
+     */
+    final int id;
+
+    RunKey(final long date, final int id) {
+        this.date = date;
+        this.id = id;
+    }
+}
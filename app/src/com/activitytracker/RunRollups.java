@@ -0,0 +1,341 @@
+package com.activitytracker;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Describes the RunRollups table, in which DBManager keeps running totals of each user's runs per day, per ISO week
+ * and per month, and works out which of those totals make up a date range.
+ *
+ * Each row of RunRollups holds, for one user and one bucket (a day, a week or a month), the number of runs and the
+ * sum and sum of squares of each run attribute. These are enough to rebuild a StatAccumulator (see
+ * StatAccumulator#of()), so the statistics for a long range can be read from a few dozen rows rather than every run:
+ * RunRollups#plan() splits a range into whole months, then whole weeks and whole days at either end, plus any
+ * partial days that must still be read from the Runs table.
+ *
+ * Buckets follow the calendar of the JVM's default time zone, the same one in which run dates are parsed:
+ *  - a day is identified by its epoch day (LocalDate#toEpochDay());
+ *  - a week by the epoch day of its Monday; and
+ *  - a month by \em year * 12 + \em month - 1.
+ */
+final class RunRollups {
+    /**
+     * The \em period of a day bucket.
+     */
+    static final int DAY = 0;
+    /**
+     * The \em period of an ISO week bucket.
+     */
+    static final int WEEK = 1;
+    /**
+     * The \em period of a month bucket.
+     */
+    static final int MONTH = 2;
+    /**
+     * Every period, in the order their rows are updated.
+     */
+    static final int[] PERIODS = {DAY, WEEK, MONTH};
+
+    /**
+     * The statement that creates the RunRollups table.
+     */
+    static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS RunRollups (" +
+            "    user_id                   INTEGER NOT NULL REFERENCES USERS (id)," +
+            "    period                    INTEGER NOT NULL," + // DAY, WEEK or MONTH
+            "    bucket                    INTEGER NOT NULL," +
+            "    run_count                 INTEGER NOT NULL," +
+            "    duration_sum              REAL    NOT NULL," +
+            "    duration_sumsq            REAL    NOT NULL," +
+            "    distance_sum              REAL    NOT NULL," +
+            "    distance_sumsq            REAL    NOT NULL," +
+            "    speed_count               INTEGER NOT NULL," + // runs with a non-zero duration
+            "    speed_sum                 REAL    NOT NULL," +
+            "    speed_sumsq               REAL    NOT NULL," +
+            "    altitude_ascended_sum     REAL    NOT NULL," +
+            "    altitude_ascended_sumsq   REAL    NOT NULL," +
+            "    altitude_descended_sum    REAL    NOT NULL," +
+            "    altitude_descended_sumsq  REAL    NOT NULL," +
+            "    PRIMARY KEY (user_id, period, bucket)" +
+            ") WITHOUT ROWID";
+
+    /**
+     * Adds a change (see RunRollups#contribution()) to a bucket, creating the bucket's row if it does not exist.
+     * Bound with RunRollups#bind().
+     */
+    static final String SQL_UPSERT = "INSERT INTO RunRollups (" +
+            "user_id, period, bucket, run_count, duration_sum, duration_sumsq, distance_sum, distance_sumsq, " +
+            "speed_count, speed_sum, speed_sumsq, altitude_ascended_sum, altitude_ascended_sumsq, " +
+            "altitude_descended_sum, altitude_descended_sumsq) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (user_id, period, bucket) DO UPDATE SET " +
+            "run_count = run_count + excluded.run_count, " +
+            "duration_sum = duration_sum + excluded.duration_sum, " +
+            "duration_sumsq = duration_sumsq + excluded.duration_sumsq, " +
+            "distance_sum = distance_sum + excluded.distance_sum, " +
+            "distance_sumsq = distance_sumsq + excluded.distance_sumsq, " +
+            "speed_count = speed_count + excluded.speed_count, " +
+            "speed_sum = speed_sum + excluded.speed_sum, " +
+            "speed_sumsq = speed_sumsq + excluded.speed_sumsq, " +
+            "altitude_ascended_sum = altitude_ascended_sum + excluded.altitude_ascended_sum, " +
+            "altitude_ascended_sumsq = altitude_ascended_sumsq + excluded.altitude_ascended_sumsq, " +
+            "altitude_descended_sum = altitude_descended_sum + excluded.altitude_descended_sum, " +
+            "altitude_descended_sumsq = altitude_descended_sumsq + excluded.altitude_descended_sumsq";
+
+    /**
+     * The number of values in a change returned by RunRollups#contribution().
+     */
+    private static final int CHANGE_LENGTH = 12;
+    /**
+     * The period of each of the bucket ranges of a Plan, in the order they are bound.
+     */
+    static final int[] PLAN_PERIODS = {MONTH, WEEK, WEEK, DAY, DAY, DAY, DAY};
+    /**
+     * Dates further than this from the epoch (roughly 35,000 years) are moved to this bound before being split into
+     * buckets, so that the calendar arithmetic cannot overflow. The partial day ranges still extend to the original
+     * dates, so no run is lost.
+     */
+    private static final long DATE_LIMIT = 1L << 50;
+
+    /**
+     * The buckets and partial days that together cover a date range. See RunRollups#plan().
+     */
+    static final class Plan {
+        /**
+         * The first and last bucket of each range, with periods RunRollups#PLAN_PERIODS. Unused ranges are empty
+         * (their first bucket is after their last).
+         */
+        final long[][] bucketRanges = new long[PLAN_PERIODS.length][];
+        /**
+         * The first and last date (in milliseconds since the epoch) of the two ranges that are not covered by whole
+         * days and must be read from the Runs table. Unused ranges are empty.
+         */
+        final long[][] partialRanges = new long[2][];
+
+        private Plan() {
+            for (int i = 0; i < bucketRanges.length; ++i) {
+                bucketRanges[i] = new long[]{1, 0};
+            }
+            for (int i = 0; i < partialRanges.length; ++i) {
+                partialRanges[i] = new long[]{1, 0};
+            }
+        }
+    }
+
+    private RunRollups() {
+    }
+
+    /**
+     * @param date A date in milliseconds since the epoch.
+     *
+     * @return The epoch day of the calendar day on which \em date falls.
+     */
+    static long epochDay(final long date) {
+        return Instant.ofEpochMilli(date).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * @param period RunRollups#DAY, RunRollups#WEEK or RunRollups#MONTH.
+     * @param epochDay A day, as returned by RunRollups#epochDay().
+     *
+     * @return The key of the bucket of \em period that contains \em epochDay.
+     */
+    static long bucket(final int period, final long epochDay) {
+        switch (period) {
+            case DAY:
+                return epochDay;
+            case WEEK:
+                return epochDay - (LocalDate.ofEpochDay(epochDay).getDayOfWeek().getValue() - 1);
+            case MONTH:
+                return monthKey(LocalDate.ofEpochDay(epochDay));
+            default:
+                throw new IllegalArgumentException("Unknown rollup period " + period + ".");
+        }
+    }
+
+    /**
+     * Returns the change one run makes to each total of its buckets, in the order of the columns of
+     * RunRollups#SQL_UPSERT from \em run_count onwards. A change can be negated with RunRollups#negate() to remove a
+     * run, or combined with another using RunRollups#add().
+     *
+     * @param duration The length of the run in seconds.
+     * @param distance The distance (in metres) that the user ran.
+     * @param altitudeAscended The altitude (in metres) that the user climbed.
+     * @param altitudeDescended The altitude (in metres) that the user descended.
+     *
+     * @return The change to the totals.
+     */
+    static double[] contribution(final float duration, final float distance, final float altitudeAscended,
+                                 final float altitudeDescended) {
+        final double[] change = new double[CHANGE_LENGTH];
+        change[0] = 1;
+        change[1] = duration;
+        change[2] = (double) duration * duration;
+        change[3] = distance;
+        change[4] = (double) distance * distance;
+        if (duration != 0f) {
+            // Computed as DBManager#getRunStats() does, from the stored values
+            final double speed = (double) distance / duration;
+            change[5] = 1;
+            change[6] = speed;
+            change[7] = speed * speed;
+        }
+        change[8] = altitudeAscended;
+        change[9] = (double) altitudeAscended * altitudeAscended;
+        change[10] = altitudeDescended;
+        change[11] = (double) altitudeDescended * altitudeDescended;
+        return change;
+    }
+
+    /**
+     * @return The change that undoes \em change.
+     */
+    static double[] negate(final double[] change) {
+        final double[] result = new double[CHANGE_LENGTH];
+        for (int i = 0; i < CHANGE_LENGTH; ++i) {
+            result[i] = -change[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return The change that has the effect of applying \em a and then \em b.
+     */
+    static double[] add(final double[] a, final double[] b) {
+        final double[] result = new double[CHANGE_LENGTH];
+        for (int i = 0; i < CHANGE_LENGTH; ++i) {
+            result[i] = a[i] + b[i];
+        }
+        return result;
+    }
+
+    /**
+     * Binds the parameters of RunRollups#SQL_UPSERT.
+     *
+     * @param stmt A statement prepared from RunRollups#SQL_UPSERT.
+     * @param userID The ID of the user whose runs changed.
+     * @param period The period of the bucket to change.
+     * @param bucket The key of the bucket to change.
+     * @param change The change to the bucket's totals.
+     *
+     * @throws SQLException Thrown if a parameter cannot be bound.
+     */
+    static void bind(final PreparedStatement stmt, final int userID, final int period, final long bucket,
+                     final double[] change) throws SQLException {
+        stmt.setInt(1, userID);
+        stmt.setInt(2, period);
+        stmt.setLong(3, bucket);
+        for (int i = 0; i < CHANGE_LENGTH; ++i) {
+            if (i == 0 || i == 5) {
+                stmt.setLong(4 + i, Math.round(change[i])); // run_count and speed_count
+            }
+            else {
+                stmt.setDouble(4 + i, change[i]);
+            }
+        }
+    }
+
+    /**
+     * Splits the range [\em startDate, \em endDate] into the coarsest buckets that fit inside it.
+     *
+     * The whole calendar days in the range are covered by whole months where possible, then by whole weeks, and then
+     * by single days, so a range of five years needs about 60 month buckets plus at most two week and four day
+     * ranges at its ends. The parts of the range that do not cover a whole day (\em e.g., the last day, when
+     * \em endDate is its midnight) are returned as partial ranges to be read from the Runs table.
+     *
+     * @param startDate The first date of the range, in milliseconds since the epoch.
+     * @param endDate The last date of the range, in milliseconds since the epoch.
+     *
+     * @return The buckets and partial ranges that make up the range, each exactly once.
+     */
+    static Plan plan(final long startDate, final long endDate) {
+        final Plan plan = new Plan();
+        if (startDate > endDate) {
+            return plan;
+        }
+
+        final long start = Math.max(startDate, -DATE_LIMIT);
+        final long end = Math.min(endDate, DATE_LIMIT);
+
+        long firstDay = epochDay(start);
+        if (midnight(firstDay) != start) {
+            ++firstDay;
+        }
+        long lastDay = epochDay(end);
+        if (midnight(lastDay + 1) - 1 != end) {
+            --lastDay;
+        }
+
+        if (firstDay > lastDay) {
+            plan.partialRanges[0] = new long[]{startDate, endDate};
+            return plan;
+        }
+        plan.partialRanges[0] = new long[]{startDate, midnight(firstDay) - 1};
+        plan.partialRanges[1] = new long[]{midnight(lastDay + 1), endDate};
+
+        final LocalDate first = LocalDate.ofEpochDay(firstDay);
+        final LocalDate last = LocalDate.ofEpochDay(lastDay);
+        final long firstMonth = monthKey(first) + (first.getDayOfMonth() == 1 ? 0 : 1);
+        final long lastMonth = monthKey(last) - (last.getDayOfMonth() == last.lengthOfMonth() ? 0 : 1);
+
+        if (firstMonth <= lastMonth) {
+            plan.bucketRanges[0] = new long[]{firstMonth, lastMonth};
+            planWeeks(plan, 1, 3, firstDay, firstDayOfMonth(firstMonth) - 1);
+            planWeeks(plan, 2, 5, firstDayOfMonth(lastMonth + 1), lastDay);
+        }
+        else {
+            planWeeks(plan, 1, 3, firstDay, lastDay);
+        }
+
+        return plan;
+    }
+
+    /**
+     * Covers the days [\em firstDay, \em lastDay] with whole weeks, stored in range \em weekRange of \em plan, and
+     * the days before and after them, stored in ranges \em dayRange and \em dayRange + 1.
+     */
+    private static void planWeeks(final Plan plan, final int weekRange, final int dayRange,
+                                  final long firstDay, final long lastDay) {
+        if (firstDay > lastDay) {
+            return;
+        }
+
+        final long firstMonday = firstDay + (8 - dayOfWeek(firstDay)) % 7;
+        final long lastSunday = lastDay - dayOfWeek(lastDay) % 7;
+
+        if (firstMonday + 6 <= lastSunday) {
+            plan.bucketRanges[weekRange] = new long[]{firstMonday, lastSunday - 6};
+            plan.bucketRanges[dayRange] = new long[]{firstDay, firstMonday - 1};
+            plan.bucketRanges[dayRange + 1] = new long[]{lastSunday + 1, lastDay};
+        }
+        else {
+            plan.bucketRanges[dayRange] = new long[]{firstDay, lastDay};
+        }
+    }
+
+    /**
+     * @return The ISO day of the week of \em epochDay, from 1 (Monday) to 7 (Sunday).
+     */
+    private static int dayOfWeek(final long epochDay) {
+        final DayOfWeek day = LocalDate.ofEpochDay(epochDay).getDayOfWeek();
+        return day.getValue();
+    }
+
+    private static long monthKey(final LocalDate date) {
+        return date.getYear() * 12L + date.getMonthValue() - 1;
+    }
+
+    private static long firstDayOfMonth(final long monthKey) {
+        return LocalDate.of((int) Math.floorDiv(monthKey, 12L), (int) Math.floorMod(monthKey, 12L) + 1, 1)
+                .toEpochDay();
+    }
+
+    /**
+     * @return The first instant of \em epochDay in milliseconds since the epoch.
+     */
+    private static long midnight(final long epochDay) {
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,194 @@
+package com.activitytracker;
+
+import java.util.Arrays;
+
+/**
+ * Encodes the samples of a run (see RunSamples) as a single compact byte array, stored in the \em samples column of
+ * the run's row in the RunSampleBlobs table.
+ *
+ * Stored as one row each in the RunSamples table, a sample takes a key and three 8 byte REALs, plus the overhead of
+ * the table's B-tree. Here each value is instead converted to fixed point (RunSampleCodec#ELAPSED_SCALE,
+ * RunSampleCodec#DISTANCE_SCALE and RunSampleCodec#ALTITUDE_SCALE units per second or metre) and stored as a
+ * difference, zig-zag encoded (so that small negative differences are small numbers too) as a variable-length
+ * integer of 7 bits per byte. For altitude this is the difference from the previous sample's altitude. Elapsed time
+ * and distance only ever grow, by about the same amount per sample (samples are recorded at regular intervals, and
+ * pace changes slowly), so for them it is the difference between this sample's increase and the previous one's.
+ * Most differences then fit in one or two bytes.
+ *
+ * The layout is:
+ *  - a format version byte (RunSampleCodec#VERSION);
+ *  - the number of samples, as a variable-length integer; and
+ *  - for each sample, the encoded differences of its elapsed time, distance and altitude, in that order.
+ *
+ * Values are rounded to the nearest millisecond and centimetre. Decoding allocates nothing per sample: samples are
+ * appended to a RunSamples, or passed to a RunSamples.SampleHandler.
+ */
+final class RunSampleCodec {
+    /**
+     * The version of the layout written by RunSampleCodec#encode().
+     */
+    static final byte VERSION = 1;
+    /**
+     * Fixed-point units per second of elapsed time.
+     */
+    static final double ELAPSED_SCALE = 1000.0;
+    /**
+     * Fixed-point units per metre of distance.
+     */
+    static final double DISTANCE_SCALE = 100.0;
+    /**
+     * Fixed-point units per metre of altitude.
+     */
+    static final double ALTITUDE_SCALE = 100.0;
+    /**
+     * The most bytes a sample can take: three variable-length 64 bit integers.
+     */
+    private static final int MAX_SAMPLE_BYTES = 3 * 10;
+
+    private RunSampleCodec() {
+    }
+
+    /**
+     * Encodes a run's samples.
+     *
+     * @param samples The samples to encode.
+     *
+     * @return The encoded samples.
+     */
+    static byte[] encode(final RunSamples samples) {
+        final int size = samples.size();
+        final float[] elapsedTimes = samples.getElapsedTimes();
+        final float[] distances = samples.getDistances();
+        final float[] altitudes = samples.getAltitudes();
+
+        // Most samples take a few bytes; grow on the rare occasion that is not enough
+        byte[] out = new byte[1 + 5 + size * 4];
+        int pos = 0;
+        out[pos++] = VERSION;
+        pos = writeVarLong(out, pos, size);
+
+        long elapsed = 0;
+        long elapsedStep = 0;
+        long distance = 0;
+        long distanceStep = 0;
+        long altitude = 0;
+        for (int i = 0; i < size; ++i) {
+            if (out.length - pos < MAX_SAMPLE_BYTES) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, pos + MAX_SAMPLE_BYTES));
+            }
+
+            final long nextElapsed = Math.round(elapsedTimes[i] * ELAPSED_SCALE);
+            final long nextDistance = Math.round(distances[i] * DISTANCE_SCALE);
+            final long nextAltitude = Math.round(altitudes[i] * ALTITUDE_SCALE);
+            pos = writeVarLong(out, pos, zigZag(nextElapsed - elapsed - elapsedStep));
+            pos = writeVarLong(out, pos, zigZag(nextDistance - distance - distanceStep));
+            pos = writeVarLong(out, pos, zigZag(nextAltitude - altitude));
+            elapsedStep = nextElapsed - elapsed;
+            distanceStep = nextDistance - distance;
+            elapsed = nextElapsed;
+            distance = nextDistance;
+            altitude = nextAltitude;
+        }
+
+        return Arrays.copyOf(out, pos);
+    }
+
+    /**
+     * @param encoded Samples encoded by RunSampleCodec#encode().
+     *
+     * @return The number of samples, read from the header alone.
+     */
+    static int count(final byte[] encoded) {
+        checkVersion(encoded);
+        return (int) readVarLong(encoded, new int[] {1});
+    }
+
+    /**
+     * Decodes samples and appends them to \em samples.
+     *
+     * @param encoded Samples encoded by RunSampleCodec#encode().
+     * @param samples The samples to append to.
+     */
+    static void decode(final byte[] encoded, final RunSamples samples) {
+        forEach(encoded, samples::add);
+    }
+
+    /**
+     * Decodes samples and passes each to \em handler, in order.
+     *
+     * @param encoded Samples encoded by RunSampleCodec#encode().
+     * @param handler Receives each sample.
+     */
+    static void forEach(final byte[] encoded, final RunSamples.SampleHandler handler) {
+        checkVersion(encoded);
+        final int[] pos = {1};
+        final long size = readVarLong(encoded, pos);
+
+        long elapsed = 0;
+        long elapsedStep = 0;
+        long distance = 0;
+        long distanceStep = 0;
+        long altitude = 0;
+        for (long i = 0; i < size; ++i) {
+            elapsedStep += unZigZag(readVarLong(encoded, pos));
+            distanceStep += unZigZag(readVarLong(encoded, pos));
+            elapsed += elapsedStep;
+            distance += distanceStep;
+            altitude += unZigZag(readVarLong(encoded, pos));
+            handler.sample((float) (elapsed / ELAPSED_SCALE), (float) (distance / DISTANCE_SCALE),
+                    (float) (altitude / ALTITUDE_SCALE));
+        }
+    }
+
+    private static void checkVersion(final byte[] encoded) {
+        if (encoded.length == 0 || encoded[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported run sample encoding.");
+        }
+    }
+
+    /**
+     * Maps signed integers to unsigned ones so that values close to zero, of either sign, are small:
+     * 0, -1, 1, -2, 2, ... become 0, 1, 2, 3, 4, ...
+     */
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes \em value 7 bits at a time, least significant first, with the high bit of each byte set if more follow.
+     *
+     * @return The position after the last byte written.
+     */
+    private static int writeVarLong(final byte[] out, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * Reads a value written by RunSampleCodec#writeVarLong() at \em pos[0], and advances \em pos[0] past it.
+     */
+    private static long readVarLong(final byte[] in, final int[] pos) {
+        long value = 0;
+        int shift = 0;
+        int p = pos[0];
+        byte b;
+        do {
+            if (p == in.length || shift > 63) {
+                throw new IllegalArgumentException("Run sample encoding is truncated or corrupt.");
+            }
+            b = in[p++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        pos[0] = p;
+        return value;
+    }
+}
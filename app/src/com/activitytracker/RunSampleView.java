@@ -0,0 +1,28 @@
+package com.activitytracker;
+
+/**
+ * Read access to the samples of one run by index, wherever they are stored: in heap arrays (RunSamples) or off the
+ * heap (OffHeapRunSamples). Analyses of samples, such as RunSplits, are written against this interface so that they
+ * work on either.
+ */
+interface RunSampleView {
+    /**
+     * @return The number of samples.
+     */
+    int size();
+
+    /**
+     * @return The elapsed time (in seconds) of the sample at \em index.
+     */
+    float getElapsed(int index);
+
+    /**
+     * @return The cumulative distance (in metres) of the sample at \em index.
+     */
+    float getDistance(int index);
+
+    /**
+     * @return The relative altitude (in metres) of the sample at \em index.
+     */
+    float getAltitude(int index);
+}
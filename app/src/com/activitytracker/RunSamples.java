@@ -0,0 +1,172 @@
+package com.activitytracker;
+
+import java.util.Arrays;
+
+/**
+ * The data points (samples) of one run, in the order they were recorded, stored column by column in parallel
+ * primitive arrays.
+ *
+ * Each sample is a data point of an input file: the elapsed time and distance of the run so far and the user's
+ * altitude relative to where the run began. Besides the totals that RunAccumulator folds these into, the samples
+ * themselves are stored with each run (see DBManager#loadRunSamples()), so that splits, charts and other analyses
+ * can be computed later without re-importing the file.
+ *
+ * As with RunColumns, the arrays returned by RunSamples#getElapsedTimes(), RunSamples#getDistances() and
+ * RunSamples#getAltitudes() are the backing arrays themselves: only the first RunSamples#size() elements are valid,
+ * and they must not be modified.
+ *
+ * For analyses of many runs at once, samples can instead be read off the heap into OffHeapRunSamples (see
+ * SampleArena). Both can be read through RunSampleView.
+ */
+final class RunSamples implements RunSampleView {
+    /**
+     * Receives the samples of a run, in order, as they are read from the database.
+     */
+    interface SampleHandler {
+        /**
+         * @param elapsed The elapsed time of the run in seconds.
+         * @param distance The cumulative distance (in metres) the user has run.
+         * @param altitude The user's altitude (in metres) relative to where the run began.
+         */
+        void sample(float elapsed, float distance, float altitude);
+    }
+
+    /**
+     * The number of samples the arrays are sized for when no capacity is given.
+     */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The number of samples held.
+     */
+    private int size = 0;
+    /**
+     * The elapsed time (in seconds) of each sample.
+     */
+    private float[] elapsedTimes;
+    /**
+     * The cumulative distance (in metres) of each sample.
+     */
+    private float[] distances;
+    /**
+     * The relative altitude (in metres) of each sample.
+     */
+    private float[] altitudes;
+
+    /**
+     * Creates an empty set of samples.
+     */
+    RunSamples() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty set of samples with room for \em capacity samples before the arrays must grow.
+     *
+     * @param capacity The number of samples expected.
+     */
+    RunSamples(final int capacity) {
+        final int n = Math.max(capacity, 1);
+        elapsedTimes = new float[n];
+        distances = new float[n];
+        altitudes = new float[n];
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param elapsed The elapsed time of the run in seconds.
+     * @param distance The cumulative distance (in metres) the user has run.
+     * @param altitude The user's altitude (in metres) relative to where the run began.
+     */
+    void add(final float elapsed, final float distance, final float altitude) {
+        if (size == elapsedTimes.length) {
+            final int capacity = size * 2;
+            elapsedTimes = Arrays.copyOf(elapsedTimes, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+            altitudes = Arrays.copyOf(altitudes, capacity);
+        }
+        elapsedTimes[size] = elapsed;
+        distances[size] = distance;
+        altitudes[size] = altitude;
+        ++size;
+    }
+
+    /**
+     * Removes every sample, keeping the arrays for reuse.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return The number of samples held.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return True if no samples are held, false otherwise.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The backing array of elapsed times, in seconds. Only the first RunSamples#size() elements are valid.
+     */
+    float[] getElapsedTimes() {
+        return elapsedTimes;
+    }
+
+    /**
+     * @return The backing array of cumulative distances, in metres. Only the first RunSamples#size() elements are
+     *         valid.
+     */
+    float[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * @return The backing array of relative altitudes, in metres. Only the first RunSamples#size() elements are
+     *         valid.
+     */
+    float[] getAltitudes() {
+        return altitudes;
+    }
+
+    @Override
+    public float getElapsed(final int index) {
+        checkIndex(index);
+        return elapsedTimes[index];
+    }
+
+    @Override
+    public float getDistance(final int index) {
+        checkIndex(index);
+        return distances[index];
+    }
+
+    @Override
+    public float getAltitude(final int index) {
+        checkIndex(index);
+        return altitudes[index];
+    }
+
+    /**
+     * Passes every sample, in order, to \em handler.
+     */
+    void forEach(final SampleHandler handler) {
+        for (int i = 0; i < size; ++i) {
+            handler.sample(elapsedTimes[i], distances[i], altitudes[i]);
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for " + size + " samples.");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.activitytracker;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes split times (\em e.g., the time taken for each kilometre) from the samples of runs.
+ *
+ * Samples are rarely recorded exactly at a split's boundary, so the time at which the user passed it is interpolated
+ * linearly between the samples either side. The samples are read through RunSampleView, so they can be on the heap
+ * (RunSamples) or off it (OffHeapRunSamples).
+ */
+final class RunSplits {
+    private RunSplits() {
+    }
+
+    /**
+     * Computes the time taken for each complete split of a run. A final, partial split is left out.
+     *
+     * @param samples The run's samples, in the order they were recorded.
+     * @param splitDistance The length of a split, in metres. Must be positive.
+     *
+     * @return The time taken for each split, in seconds, in order.
+     */
+    static float[] splitTimes(final RunSampleView samples, final float splitDistance) {
+        if (!(splitDistance > 0f)) {
+            throw new IllegalArgumentException("Split distance must be positive.");
+        }
+
+        final int size = samples.size();
+        float[] splits = new float[16];
+        int count = 0;
+
+        // The run starts at (0 s, 0 m)
+        float previousElapsed = 0f;
+        float previousDistance = 0f;
+        float splitStart = 0f;
+        double nextBoundary = splitDistance;
+
+        for (int i = 0; i < size; ++i) {
+            final float elapsed = samples.getElapsed(i);
+            final float distance = samples.getDistance(i);
+
+            while (distance >= nextBoundary && distance > previousDistance) {
+                final double fraction = (nextBoundary - previousDistance) / (distance - previousDistance);
+                final float boundaryElapsed = (float) (previousElapsed + fraction * (elapsed - previousElapsed));
+
+                if (count == splits.length) {
+                    splits = Arrays.copyOf(splits, count * 2);
+                }
+                splits[count++] = boundaryElapsed - splitStart;
+                splitStart = boundaryElapsed;
+                nextBoundary += splitDistance;
+            }
+
+            previousElapsed = elapsed;
+            previousDistance = distance;
+        }
+
+        return Arrays.copyOf(splits, count);
+    }
+
+    /**
+     * Computes the mean time taken for each split over several runs, for comparing a user's pace across runs. Split
+     * \em i is averaged over the runs that completed it.
+     *
+     * @param runs The samples of each run.
+     * @param splitDistance The length of a split, in metres. Must be positive.
+     *
+     * @return The mean time taken for each split, in seconds, up to the last split completed by any of the runs.
+     */
+    static float[] meanSplitTimes(final List<? extends RunSampleView> runs, final float splitDistance) {
+        double[] totals = new double[0];
+        int[] counts = new int[0];
+
+        for (final RunSampleView run : runs) {
+            final float[] splits = splitTimes(run, splitDistance);
+            if (splits.length > totals.length) {
+                totals = Arrays.copyOf(totals, splits.length);
+                counts = Arrays.copyOf(counts, splits.length);
+            }
+            for (int i = 0; i < splits.length; ++i) {
+                totals[i] += splits[i];
+                ++counts[i];
+            }
+        }
+
+        final float[] means = new float[totals.length];
+        for (int i = 0; i < means.length; ++i) {
+            means[i] = (float) (totals[i] / counts[i]);
+        }
+        return means;
+    }
+}
@@ -1,209 +1,397 @@
 package com.activitytracker;
 
+import java.util.EnumMap;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * The RunStats class is used to compute statistics for a selection of past runs.
  *
  * It is intended to be integrated with the Run#getRuns method, as that returns a vector of Run
  * objects that match search parameters, and the constructor of this class accepts a vector of
- * Run objects, or nothing.
+ * Run objects, or nothing. Where no Run objects are needed, a RunColumns (\em e.g., from
+ * DBManager#loadRunColumns()) can be passed instead, which is summarized one column at a time.
+ *
+ * Alternatively, DBManager#getRunStats() computes the same statistics in SQL and builds a RunStats
+ * directly from the aggregate row, without creating any Run objects.
+ *
+ * Rather than keeping the runs themselves, a RunStats keeps one StatAccumulator per RunAttribute.
+ * Adding a run therefore takes constant time, and two RunStats objects (\em e.g., for different
+ * date ranges, or computed on different threads) can be combined with RunStats#merge().
+ *
+ * Each attribute also has a QuantileSketch, from which medians, percentiles and histograms are estimated in bounded
+ * memory however many runs there are. Statistics computed by the database carry no sketch, so for a RunStats built
+ * by DBManager#getRunStats() these are unavailable (\em NaN) until runs are added to it.
  */
 public class RunStats {
     /**
-     * The runs for which the statistics in the RunStats object pertain.
+     * The largest number of runs that RunStats#computeParallel() summarizes on a single thread. Larger sets are split
+     * in half until each part is at most this size.
      */
-    private Vector<Run> runs;
+    static final int PARALLEL_THRESHOLD = 8192;
+
     /**
-     * The average speed for all runs in RunStats#runs.
+     * Summarizes the runs in [\em from, \em to) of a RunColumns, splitting the range across the fork/join pool when
+     * it is larger than RunStats#PARALLEL_THRESHOLD and merging the partial results.
      */
-    private float meanSpeed;
+    private static final class ColumnTask extends RecursiveTask<RunStats> {
+        private static final long serialVersionUID = 1L;
+
+        private final RunColumns runs;
+        private final int from;
+        private final int to;
+
+        ColumnTask(final RunColumns runs, final int from, final int to) {
+            this.runs = runs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RunStats compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                final RunStats stats = new RunStats();
+                stats.addRuns(runs, from, to);
+                return stats;
+            }
+
+            final int middle = (from + to) >>> 1;
+            final ColumnTask left = new ColumnTask(runs, from, middle);
+            left.fork();
+            final RunStats stats = new ColumnTask(runs, middle, to).compute();
+            stats.merge(left.join());
+            return stats;
+        }
+    }
+
     /**
-     * Cumulative distance ran for all runs in RunStats#runs.
+     * The number of runs the statistics pertain to.
      */
-    private float totalDistance;
+    private int numRuns;
     /**
-     * Mean distance per run, computed using the runs in RunStats#runs.
+     * The statistics of each attribute over all runs.
+     *
+     * A run with a duration of zero has no defined speed, so it is left out of the statistics for
+     * RunAttribute.SPEED (but counted for all other attributes).
      */
-    private float meanDistance;
+    private final EnumMap<RunAttribute, StatAccumulator> stats = new EnumMap<>(RunAttribute.class);
     /**
-     * Cumulative altitude climbed for all runs in RunStats#runs.
+     * The distribution of each attribute over all runs, with runs of zero duration left out of RunAttribute.SPEED
+     * as in RunStats#stats.
      */
-    private float totalAltitudeAscended;
+    private final EnumMap<RunAttribute, QuantileSketch> sketches = new EnumMap<>(RunAttribute.class);
+
     /**
-     * Mean altitude climbed per run, computed using the runs in RunStats#runs.
+     * Computes all statistics based on the contents of the \em runs vector.
+     *
+     * @param runs A vector of Run objects with which we compute statistics.
      */
-    private float meanAltitudeAscended;
+    RunStats(final Vector<Run> runs) {
+        this();
+        if (runs != null) {
+            for (final Run run : runs) {
+                this.addRun(run);
+            }
+        }
+    }
+
     /**
-     * Cumulative altitude descended for all runs in RunStats#runs.
+     * Computes all statistics based on the contents of \em runs, one column at a time.
+     *
+     * @param runs A set of runs with which we compute statistics.
      */
-    private float totalAltitudeDescended;
+    RunStats(final RunColumns runs) {
+        this();
+        this.addRuns(runs);
+    }
+
     /**
-     * Mean altitude descended per run, computed using the runs in RunStats#runs.
+     * An overloaded constructor which takes no argument. Since there are no runs, all stats have
+     * the value \em 0.0f.
+     *
+     * You may want to use RunStats#addRun() to add Runs to a (possibly empty) RunStats object.
      */
-    private float meanAltitudeDescended;
+    RunStats() {
+        this.numRuns = 0;
+        for (final RunAttribute attribute : RunAttribute.values()) {
+            this.stats.put(attribute, new StatAccumulator());
+            this.sketches.put(attribute, new QuantileSketch());
+        }
+    }
+
     /**
-     * Mean duration per run, computed using the runs in RunStats#runs.
+     * Creates a RunStats object for statistics that have already been computed elsewhere (\em i.e.,
+     * by the database in DBManager#getRunStats()). All statistics start as \em 0.0f and are filled
+     * in with RunStats#setAggregate().
+     *
+     * @param numRuns The number of runs the statistics pertain to.
      */
-    private float meanDuration;
+    RunStats(final int numRuns) {
+        this();
+        this.numRuns = numRuns;
+    }
 
     /**
-     * Stores the \em runs parameter in RunStats#runs and computes all statistics based on the
-     * contents of this vector.
+     * Replaces the statistics for the RunAttribute passed as \em attribute.
      *
-     * @param runs A vector of Run objects with which we compute statistics.
+     * This is used by DBManager#getRunStats() to fill in statistics that were computed by the
+     * database.
+     *
+     * @param attribute The RunAttribute the statistics describe.
+     * @param accumulator The statistics of the attribute over all runs.
      */
-    RunStats(final Vector<Run> runs) {
-        this.runs = runs;
-        this.computeAll();
+    void setAggregate(final RunAttribute attribute, final StatAccumulator accumulator) {
+        this.stats.put(attribute, accumulator);
     }
 
     /**
-     * An overloaded constructor which takes no argument. Here we assign to RunStats#runs an empty
-     * vector. Computations are attempted but since the vector has size of zero, RunStats#compute()
-     * assigns all stats the value \em 0.0f.
+     * Adds a Run object to the set of runs that the statistics are based on, updating every
+     * statistic in constant time.
      *
-     * You may want to use RunStats#addRun() to add Runs to a (possibly empty) RunStats object.
+     * @param run A Run object to be added to the set of runs that the RunStats statistics
+     *            are based on.
      */
-    RunStats() {
-        this(new Vector<>());
+    public void addRun(Run run) {
+        ++this.numRuns;
+        this.add(RunAttribute.DISTANCE, run.getDistance());
+        this.add(RunAttribute.DURATION, run.getDuration());
+        this.add(RunAttribute.ALTITUDE_ASCENDED, run.getAltitudeAscended());
+        this.add(RunAttribute.ALTITUDE_DESCENDED, run.getAltitudeDescended());
+        if (run.getDuration() != 0.0f) {
+            this.add(RunAttribute.SPEED, run.getSpeed());
+        }
+    }
+
+    private void add(final RunAttribute attribute, final float value) {
+        this.stats.get(attribute).add(value);
+        this.sketches.get(attribute).add(value);
     }
 
     /**
-     * A wrapper for the compute() method in this class that invokes all calculations.
+     * Adds every run in \em runs to the set of runs that the statistics are based on, as if each of them had been
+     * passed to RunStats#addRun(), but reading each column of \em runs in a single pass.
      *
-     * Basically, it's the lazy man's way of calling the full computation.
+     * @param runs The runs to be added.
      */
-    private void computeAll() {
-        this.compute(RunAttribute.SPEED);
-        this.compute(RunAttribute.DISTANCE);
-        this.compute(RunAttribute.ALTITUDE_ASCENDED);
-        this.compute(RunAttribute.ALTITUDE_DESCENDED);
-        this.compute(RunAttribute.DURATION);
+    void addRuns(final RunColumns runs) {
+        this.addRuns(runs, 0, runs.size());
     }
 
     /**
-     * Computes and stores averages for the RunAttribute passed as \em attribute, and stores
-     * a total sum where applicable.
+     * Adds the runs in [\em from, \em to) of \em runs to the set of runs that the statistics are based on.
      *
-     * @param attribute The RunAttribute for which we are computing statistics.
+     * @param runs The runs to be added.
+     * @param from The index of the first run to add.
+     * @param to The index after the last run to add.
      */
-    private void compute(final RunAttribute attribute) {
-        float sum = 0.0f;
-        int numRuns = runs.size();
-
-        // If there are no runs, set everything to 0
-        if (numRuns == 0) {
-            this.meanSpeed = 0.0f;
-            this.totalDistance = 0.0f;
-            this.meanDistance = 0.0f;
-            this.totalAltitudeAscended = 0.0f;
-            this.meanAltitudeAscended = 0.0f;
-            this.totalAltitudeDescended = 0.0f;
-            this.meanAltitudeDescended = 0.0f;
-            this.meanDuration = 0.0f;
-            return;
+    private void addRuns(final RunColumns runs, final int from, final int to) {
+        this.numRuns += to - from;
+        for (final RunAttribute attribute : RunAttribute.values()) {
+            this.stats.get(attribute).addAll(runs.getColumn(attribute), from, to);
+            this.sketches.get(attribute).addAll(runs.getColumn(attribute), from, to);
         }
+    }
 
-        switch (attribute) {
-            case DISTANCE:
-                for (Run run : this.runs)
-                    sum += run.getDistance();
-                this.totalDistance = sum;
-                break;
-            case DURATION:
-                for (Run run : this.runs)
-                    sum += run.getDuration();
-                break;
-            case ALTITUDE_ASCENDED:
-                for (Run run : this.runs)
-                    sum += run.getAltitudeAscended();
-                this.totalAltitudeAscended = sum;
-                break;
-            case ALTITUDE_DESCENDED:
-                for (Run run : this.runs)
-                    sum += run.getAltitudeDescended();
-                this.totalAltitudeDescended = sum;
-                break;
-            case SPEED:
-                for (Run run : this.runs)
-                    sum += run.getSpeed();
-                break;
-        }
+    /**
+     * Computes statistics for \em runs on the common fork/join pool.
+     *
+     * @see RunStats#computeParallel(RunColumns, ForkJoinPool)
+     */
+    static RunStats computeParallel(final RunColumns runs) {
+        return computeParallel(runs, ForkJoinPool.commonPool());
+    }
 
-        float mean = sum / numRuns;
-
-        switch (attribute) {
-            case DISTANCE:
-                this.meanDistance = mean;
-                break;
-            case DURATION:
-                this.meanDuration = mean;
-                break;
-            case ALTITUDE_ASCENDED:
-                this.meanAltitudeAscended = mean;
-                break;
-            case ALTITUDE_DESCENDED:
-                this.meanAltitudeDescended = mean;
-                break;
-            case SPEED:
-                this.meanSpeed = mean;
+    /**
+     * Computes statistics for \em runs in parallel, for users with long run histories.
+     *
+     * The runs are split into chunks of at most RunStats#PARALLEL_THRESHOLD runs, each chunk is summarized on a
+     * thread of \em pool, and the partial statistics are combined with RunStats#merge(). A set no larger than one
+     * chunk is summarized on the calling thread, exactly as RunStats(RunColumns) would. Otherwise the totals,
+     * extremes, means and standard deviations are the same as the sequential ones up to floating point rounding.
+     * Quantiles and histograms (RunStats#getQuantile(), RunStats#getMedian(), RunStats#getHistogram()) are not: they
+     * are estimates within the rank error of the QuantileSketch, and which values the sketch keeps depends on how the
+     * chunks are merged, so they can differ from the sequential ones by up to that error.
+     *
+     * @param runs A set of runs with which we compute statistics.
+     * @param pool The pool on which the chunks are summarized.
+     *
+     * @return The statistics for \em runs.
+     */
+    static RunStats computeParallel(final RunColumns runs, final ForkJoinPool pool) {
+        if (runs.size() <= PARALLEL_THRESHOLD) {
+            return new RunStats(runs);
         }
+        return pool.invoke(new ColumnTask(runs, 0, runs.size()));
     }
 
     /**
-     * Adds a Run object to the RunStats#runs vector and re-computes statistics by invoking
-     * RunStats#computeAll().
+     * Adds the runs summarized by \em other to this RunStats object, as if each of them had been
+     * passed to RunStats#addRun(). \em other is not modified.
      *
-     * @param run A Run object to be appended to the set of runs that the RunStats statistics
-     *            are based on.
+     * @param other The statistics to combine with these.
      */
-    public void addRun(Run run) {
-        this.runs.addElement(run);
-        this.computeAll();
+    public void merge(final RunStats other) {
+        this.numRuns += other.numRuns;
+        for (final RunAttribute attribute : RunAttribute.values()) {
+            this.stats.get(attribute).merge(other.stats.get(attribute));
+            this.sketches.get(attribute).merge(other.sketches.get(attribute));
+        }
+    }
+
+    /**
+     * @return A RunStats object with the same statistics as this one, which can be modified independently of it.
+     */
+    RunStats copy() {
+        final RunStats copy = new RunStats();
+        copy.merge(this);
+        return copy;
     }
 
     /**
      * Checks if an instance of RunStats has any runs with with statistics have been computed.
      *
-     * If this method returns \em False then all statistics are set to \em 0.0f (\em i.e.,
+     * If this method returns \em True then all statistics are set to \em 0.0f (\em i.e.,
      * they are useless).
      *
-     * @return True if the RunStats#runs vector has a size of zero, false otherwise.
+     * @return True if the statistics pertain to no runs, false otherwise.
      */
     public boolean isEmpty() {
-        return this.runs.size() == 0;
+        return this.numRuns == 0;
+    }
+
+    public int getRunCount() {
+        return numRuns;
+    }
+
+    /**
+     * @param attribute The attribute whose spread we want.
+     *
+     * @return The (population) variance of \em attribute over all runs.
+     */
+    public float getVariance(final RunAttribute attribute) {
+        return (float) stats.get(attribute).getVariance();
+    }
+
+    /**
+     * @param attribute The attribute whose spread we want.
+     *
+     * @return The (population) standard deviation of \em attribute over all runs.
+     */
+    public float getStandardDeviation(final RunAttribute attribute) {
+        return (float) Math.sqrt(stats.get(attribute).getVariance());
+    }
+
+    /**
+     * Estimates the value of \em attribute below which a fraction \em q of the runs fall.
+     *
+     * For example, getQuantile(RunAttribute.DISTANCE, 0.9) is the 90th percentile distance. As pace is the inverse
+     * of speed, the 90th percentile pace is 1 / getQuantile(RunAttribute.SPEED, 0.1).
+     *
+     * @param attribute The attribute whose distribution we want.
+     * @param q The quantile, between \em 0 (the minimum) and \em 1 (the maximum).
+     *
+     * @return The estimated quantile, or \em NaN if no runs have been added.
+     */
+    public float getQuantile(final RunAttribute attribute, final double q) {
+        return sketches.get(attribute).getQuantile(q);
+    }
+
+    /**
+     * @param attribute The attribute whose distribution we want.
+     *
+     * @return The estimated median of \em attribute, or \em NaN if no runs have been added.
+     */
+    public float getMedian(final RunAttribute attribute) {
+        return getQuantile(attribute, 0.5);
+    }
+
+    /**
+     * Estimates how many runs fall into each bucket of a histogram of \em attribute.
+     *
+     * @param attribute The attribute whose distribution we want.
+     * @param splitPoints The boundaries between buckets, in increasing order. Bucket \em i holds the runs below
+     *                    \em splitPoints[i] and at or above \em splitPoints[i - 1].
+     *
+     * @return The estimated number of runs in each of the \em splitPoints.length + 1 buckets.
+     */
+    public long[] getHistogram(final RunAttribute attribute, final float[] splitPoints) {
+        return sketches.get(attribute).getHistogram(splitPoints);
     }
 
     public float getMeanSpeed() {
-        return meanSpeed;
+        return (float) stats.get(RunAttribute.SPEED).getMean();
     }
 
     public float getTotalDistance() {
-        return totalDistance;
+        return (float) stats.get(RunAttribute.DISTANCE).getSum();
     }
 
     public float getMeanDistance() {
-        return meanDistance;
+        return (float) stats.get(RunAttribute.DISTANCE).getMean();
     }
 
     public float getTotalAltitudeAscended() {
-        return totalAltitudeAscended;
+        return (float) stats.get(RunAttribute.ALTITUDE_ASCENDED).getSum();
     }
 
     public float getMeanAltitudeAscended() {
-        return meanAltitudeAscended;
+        return (float) stats.get(RunAttribute.ALTITUDE_ASCENDED).getMean();
     }
 
     public float getTotalAltitudeDescended() {
-        return totalAltitudeDescended;
+        return (float) stats.get(RunAttribute.ALTITUDE_DESCENDED).getSum();
     }
 
     public float getMeanAltitudeDescended() {
-        return meanAltitudeDescended;
+        return (float) stats.get(RunAttribute.ALTITUDE_DESCENDED).getMean();
     }
 
     public float getMeanDuration() {
-        return meanDuration;
+        return (float) stats.get(RunAttribute.DURATION).getMean();
+    }
+
+    public float getTotalDuration() {
+        return (float) stats.get(RunAttribute.DURATION).getSum();
+    }
+
+    public float getMinSpeed() {
+        return (float) stats.get(RunAttribute.SPEED).getMin();
+    }
+
+    public float getMaxSpeed() {
+        return (float) stats.get(RunAttribute.SPEED).getMax();
+    }
+
+    public float getMinDistance() {
+        return (float) stats.get(RunAttribute.DISTANCE).getMin();
+    }
+
+    public float getMaxDistance() {
+        return (float) stats.get(RunAttribute.DISTANCE).getMax();
+    }
+
+    public float getMinAltitudeAscended() {
+        return (float) stats.get(RunAttribute.ALTITUDE_ASCENDED).getMin();
+    }
+
+    public float getMaxAltitudeAscended() {
+        return (float) stats.get(RunAttribute.ALTITUDE_ASCENDED).getMax();
+    }
+
+    public float getMinAltitudeDescended() {
+        return (float) stats.get(RunAttribute.ALTITUDE_DESCENDED).getMin();
+    }
+
+    public float getMaxAltitudeDescended() {
+        return (float) stats.get(RunAttribute.ALTITUDE_DESCENDED).getMax();
+    }
+
+    public float getMinDuration() {
+        return (float) stats.get(RunAttribute.DURATION).getMin();
+    }
+
+    public float getMaxDuration() {
+        return (float) stats.get(RunAttribute.DURATION).getMax();
     }
 }
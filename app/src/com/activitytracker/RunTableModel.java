@@ -0,0 +1,271 @@
+package com.activitytracker;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Table model for the "My Activity" table that loads a user's runs one page at a time, as the table asks for them.
+ *
+ * Rather than reading a user's whole run history up front, the model reads the number of runs and the first page,
+ * which is enough to size the table and fill its first screen, and then the key of the first run of each page (see
+ * DBManager#loadRunPageKeys()), with which any page can be read directly with DBManager#loadRunPage(). Pages are
+ * read on a background thread when a cell on them is first asked for (until then their cells are empty), and at most
+ * RunTableModel#MAX_CACHED_PAGES of them are kept, the least recently shown being discarded first. Memory use
+ * therefore stays the same however long the history is.
+ *
+ * Cells are read straight from each page's RunColumns. Apart from RunTableModel#setRange(), the model must only be
+ * used on the event dispatch thread.
+ */
+class RunTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of runs read at once.
+     */
+    static final int PAGE_SIZE = 200;
+    /**
+     * The largest number of pages kept in memory.
+     */
+    static final int MAX_CACHED_PAGES = 16;
+    /**
+     * The headings of the table's columns.
+     */
+    private static final String[] COLUMN_NAMES = {
+            "Date", "Duration (sec)", "Distance (m)", "Altitude + (m)", "Altitude - (m)"
+    };
+
+    /**
+     * The connection to the database.
+     */
+    private final DBManager dbManager;
+    /**
+     * The ID of the user whose runs are shown.
+     */
+    private final int userID;
+    /**
+     * Reads pages (and page keys) in the background, one at a time and in the order they were asked for.
+     */
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "run-table-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The lower bound of the interval whose runs are shown.
+     */
+    private Date startDate = new Date(Long.MIN_VALUE);
+    /**
+     * The upper bound of the interval whose runs are shown.
+     */
+    private Date endDate = new Date(Long.MAX_VALUE);
+    /**
+     * Incremented whenever the interval changes, so that the results of an earlier RunTableModel#setRange() that
+     * arrive late are ignored. Only written on the event dispatch thread, but read by the loader, which skips reads
+     * that have been superseded before they start.
+     */
+    private volatile int generation = 0;
+    /**
+     * The generation whose runs are shown, so that pages read for a previous interval are ignored.
+     */
+    private int shownGeneration = 0;
+    /**
+     * The number of runs in the interval.
+     */
+    private int rowCount = 0;
+    /**
+     * The key of the first run of each page.
+     */
+    private Vector<RunKey> pageKeys = new Vector<>();
+    /**
+     * The pages in memory, from least to most recently shown.
+     */
+    private final Map<Integer, RunColumns> pages = new LinkedHashMap<Integer, RunColumns>(MAX_CACHED_PAGES, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, RunColumns> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    /**
+     * The pages that are being read.
+     */
+    private final Set<Integer> pendingPages = new HashSet<>();
+
+    /**
+     * @param dbManager The connection to the database.
+     * @param userID The ID of the user whose runs are shown.
+     */
+    RunTableModel(final DBManager dbManager, final int userID) {
+        this.dbManager = dbManager;
+        this.userID = userID;
+    }
+
+    /**
+     * Shows the runs between \em start and \em end, replacing whatever was shown before.
+     *
+     * The number of runs and the first page are read in the background and shown as soon as they are available,
+     * followed by the page keys. May be called from any thread.
+     *
+     * @param start The lower bound of the interval whose runs are shown.
+     * @param end The upper bound of the interval whose runs are shown.
+     */
+    void setRange(final Date start, final Date end) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> setRange(start, end));
+            return;
+        }
+
+        final int loadGeneration = ++generation;
+
+        loader.execute(() -> {
+            if (loadGeneration != generation) {
+                return;
+            }
+            final int count = dbManager.countRuns(userID, start, end);
+            final RunColumns firstPage = dbManager.loadRunPage(userID, start, end, null, PAGE_SIZE);
+
+            SwingUtilities.invokeLater(() -> {
+                if (loadGeneration != generation) {
+                    return;
+                }
+                shownGeneration = loadGeneration;
+                startDate = start;
+                endDate = end;
+                rowCount = count;
+                pageKeys = new Vector<>();
+                pendingPages.clear();
+                pages.clear();
+                pages.put(0, firstPage);
+                fireTableDataChanged();
+            });
+        });
+
+        loader.execute(() -> {
+            if (loadGeneration != generation) {
+                return;
+            }
+            final Vector<RunKey> keys = dbManager.loadRunPageKeys(userID, start, end, PAGE_SIZE);
+
+            SwingUtilities.invokeLater(() -> {
+                if (loadGeneration != shownGeneration) {
+                    return;
+                }
+                pageKeys = keys;
+                // Runs added since the count was read will show once the range is reloaded
+                final int keyedRows = Math.min(rowCount, keys.size() * PAGE_SIZE);
+                if (keyedRows < rowCount) {
+                    rowCount = keyedRows;
+                    fireTableDataChanged();
+                }
+                else if (rowCount > 0) {
+                    // Repaint, so that the rows that were waiting for their page keys are requested
+                    fireTableRowsUpdated(0, rowCount - 1);
+                }
+            });
+        });
+    }
+
+    /**
+     * @return The number of pages in memory.
+     */
+    int getCachedPageCount() {
+        return pages.size();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(final int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(final int column) {
+        return column == 0 ? Date.class : Float.class;
+    }
+
+    /**
+     * Returns the value of a cell, or \em null if its page has not been read yet (in which case it is read in the
+     * background and the table is told once it is available).
+     */
+    @Override
+    public Object getValueAt(final int row, final int column) {
+        final int page = row / PAGE_SIZE;
+        final RunColumns runs = pages.get(page);
+        final int index = row % PAGE_SIZE;
+
+        if (runs == null) {
+            requestPage(page);
+            return null;
+        }
+        if (index >= runs.size()) {
+            // The page was shortened by a change to the database after the page keys were read
+            return null;
+        }
+
+        switch (column) {
+            case 0:
+                return new Date(runs.getDate(index));
+            case 1:
+                return runs.getDuration(index);
+            case 2:
+                return runs.getDistance(index);
+            case 3:
+                return Run.roundAltitude(runs.getAltitudeAscended(index));
+            case 4:
+                return Run.roundAltitude(runs.getAltitudeDescended(index));
+            default:
+                throw new IndexOutOfBoundsException("Column " + column + " does not exist.");
+        }
+    }
+
+    /**
+     * Reads page \em page in the background, unless it is already being read. Does nothing until the page keys have
+     * been read; they are followed by a repaint that asks for the page again.
+     */
+    private void requestPage(final int page) {
+        if (page >= pageKeys.size() || !pendingPages.add(page)) {
+            return;
+        }
+
+        final int loadGeneration = shownGeneration;
+        final RunKey first = pageKeys.get(page);
+        final Date start = startDate;
+        final Date end = endDate;
+
+        loader.execute(() -> {
+            if (loadGeneration != generation) {
+                return;
+            }
+            final RunColumns runs = dbManager.loadRunPage(userID, start, end, first, PAGE_SIZE);
+
+            SwingUtilities.invokeLater(() -> {
+                if (loadGeneration != shownGeneration) {
+                    return;
+                }
+                pendingPages.remove(page);
+                pages.put(page, runs);
+
+                final int firstRow = page * PAGE_SIZE;
+                fireTableRowsUpdated(firstRow, Math.min(firstRow + PAGE_SIZE, rowCount) - 1);
+            });
+        });
+    }
+}
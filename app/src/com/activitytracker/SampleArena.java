@@ -0,0 +1,170 @@
+package com.activitytracker;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap memory for the samples of many runs, allocated and released together.
+ *
+ * Analyses that load the samples of many runs at once (splits, charts, comparisons) would otherwise create three
+ * float arrays per run, which the garbage collector must trace and copy. An arena instead hands out
+ * OffHeapRunSamples carved out of a few large direct buffers (slabs of SampleArena#slabBytes bytes each). Only the
+ * small objects that describe each run's samples live on the heap, so heap use does not depend on the number of
+ * samples loaded.
+ *
+ * An arena belongs to one analysis session. SampleArena#reset() discards everything allocated so far and reuses the
+ * slabs for the next analysis; SampleArena#close() releases them. Samples allocated before either call must not be
+ * used after it: doing so throws IllegalStateException. An arena must only be used by one thread at a time.
+ *
+ * The Foreign Function and Memory API (MemorySegment and Arena) is not available in Java 11, which this application
+ * targets, so direct ByteBuffers are used instead. Their memory is returned to the operating system when the
+ * buffers are garbage collected after SampleArena#close(), rather than immediately.
+ */
+final class SampleArena implements AutoCloseable {
+    /**
+     * The size of each slab when none is specified: enough for about 350,000 samples.
+     */
+    static final int DEFAULT_SLAB_BYTES = 4 * 1024 * 1024;
+    /**
+     * The bytes taken by one sample: three floats.
+     */
+    static final int SAMPLE_BYTES = 3 * Float.BYTES;
+
+    /**
+     * The size of each slab. Runs with more samples than fit in one slab get a slab of their own.
+     */
+    private final int slabBytes;
+    /**
+     * Every slab allocated so far that runs share.
+     */
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    /**
+     * The slabs of runs too large to share one, allocated since the last reset. They are never allocated from again.
+     */
+    private final List<ByteBuffer> ownSlabs = new ArrayList<>();
+    /**
+     * The index in SampleArena#slabs of the slab being allocated from.
+     */
+    private int slab = 0;
+    /**
+     * The number of bytes of the current slab already allocated.
+     */
+    private int offset = 0;
+    /**
+     * Incremented by SampleArena#reset() and SampleArena#close(), invalidating the samples allocated before.
+     */
+    private int generation = 0;
+    /**
+     * True once SampleArena#close() has been called.
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates an arena with slabs of SampleArena#DEFAULT_SLAB_BYTES bytes.
+     */
+    SampleArena() {
+        this(DEFAULT_SLAB_BYTES);
+    }
+
+    /**
+     * @param slabBytes The size of each slab, in bytes. At least one sample's worth.
+     */
+    SampleArena(final int slabBytes) {
+        this.slabBytes = Math.max(slabBytes, SAMPLE_BYTES);
+    }
+
+    /**
+     * Allocates room for \em count samples. The samples are filled in with OffHeapRunSamples#sample().
+     *
+     * @param count The number of samples the run has.
+     *
+     * @return Empty samples with room for \em count samples.
+     */
+    OffHeapRunSamples allocate(final int count) {
+        checkOpen();
+        if (count < 0 || count > Integer.MAX_VALUE / SAMPLE_BYTES) {
+            throw new IllegalArgumentException("Cannot allocate " + count + " samples.");
+        }
+
+        final int bytes = count * SAMPLE_BYTES;
+        if (bytes > slabBytes) {
+            // Too large to share a slab; keep it in one of its own
+            final ByteBuffer own = allocateSlab(bytes);
+            ownSlabs.add(own);
+            return new OffHeapRunSamples(this, generation, own, 0, count);
+        }
+
+        while (slab < slabs.size() && slabs.get(slab).capacity() - offset < bytes) {
+            ++slab;
+            offset = 0;
+        }
+        if (slab == slabs.size()) {
+            slabs.add(allocateSlab(slabBytes));
+            offset = 0;
+        }
+
+        final OffHeapRunSamples samples = new OffHeapRunSamples(this, generation, slabs.get(slab), offset, count);
+        offset += bytes;
+        return samples;
+    }
+
+    /**
+     * Discards every sample allocated so far, keeping the shared slabs for the next allocations. The slabs of runs
+     * too large to share one are released.
+     */
+    void reset() {
+        checkOpen();
+        ++generation;
+        ownSlabs.clear();
+        slab = 0;
+        offset = 0;
+    }
+
+    /**
+     * @return The total size of the slabs, in bytes.
+     */
+    long getReservedBytes() {
+        long bytes = 0;
+        for (final ByteBuffer buffer : slabs) {
+            bytes += buffer.capacity();
+        }
+        for (final ByteBuffer buffer : ownSlabs) {
+            bytes += buffer.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Releases the slabs. Samples allocated from the arena can no longer be read.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            ++generation;
+            slabs.clear();
+            ownSlabs.clear();
+        }
+    }
+
+    /**
+     * Throws IllegalStateException unless samples allocated in generation \em allocatedIn may still be used.
+     */
+    void checkValid(final int allocatedIn) {
+        if (allocatedIn != generation) {
+            throw new IllegalStateException("Samples were used after their arena was reset or closed.");
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The sample arena is closed.");
+        }
+    }
+
+    private static ByteBuffer allocateSlab(final int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+}
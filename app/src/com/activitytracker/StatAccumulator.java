@@ -0,0 +1,219 @@
+package com.activitytracker;
+
+/**
+ * Accumulates summary statistics (count, sum, mean, variance, minimum and maximum) for a stream of values in
+ * constant time and memory per value.
+ *
+ * The sum is kept with Neumaier's compensated summation, so that adding many values of different magnitudes (\em e.g.,
+ * years of run distances) does not lose precision the way a running float total does. The mean and variance are
+ * kept with Welford's algorithm for the same reason.
+ *
+ * Accumulators are mergeable: StatAccumulator#merge() combines two accumulators into the statistics of the union of
+ * their values, so partial results computed separately (\em e.g., on different threads) can be combined.
+ */
+class StatAccumulator {
+    /**
+     * The number of values accumulated.
+     */
+    private long count = 0;
+    /**
+     * The running (uncompensated) sum of the values.
+     */
+    private double sum = 0.0;
+    /**
+     * The low-order bits lost from StatAccumulator#sum, to be added back when the sum is read.
+     */
+    private double compensation = 0.0;
+    /**
+     * The mean of the values.
+     */
+    private double mean = 0.0;
+    /**
+     * The sum of squared differences from the mean (Welford's \em M2).
+     */
+    private double m2 = 0.0;
+    /**
+     * The smallest value accumulated.
+     */
+    private double min = Double.POSITIVE_INFINITY;
+    /**
+     * The largest value accumulated.
+     */
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates an accumulator for statistics that were computed elsewhere (\em i.e., by an aggregate SQL query).
+     *
+     * @param count The number of values.
+     * @param sum The sum of the values.
+     * @param sumOfSquares The sum of the squares of the values.
+     * @param min The smallest value.
+     * @param max The largest value.
+     *
+     * @return An accumulator holding those statistics, to which further values may be added.
+     */
+    static StatAccumulator of(final long count, final double sum, final double sumOfSquares,
+                              final double min, final double max) {
+        final StatAccumulator acc = new StatAccumulator();
+        if (count > 0) {
+            acc.count = count;
+            acc.sum = sum;
+            acc.mean = sum / count;
+            acc.m2 = Math.max(sumOfSquares - sum * acc.mean, 0.0);
+            acc.min = min;
+            acc.max = max;
+        }
+        return acc;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value The value to add.
+     */
+    void add(final double value) {
+        ++count;
+        addToSum(value, 0.0);
+
+        final double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values in [\em from, \em to) of \em values, skipping any that are \em NaN.
+     *
+     * Rather than calling StatAccumulator#add() for each value, the block is summarized with simple loops over the
+     * array (which the JIT can unroll and vectorize) and then merged in. The block is summed in double precision,
+     * which is exact enough for float inputs, and its variance is taken about the block mean.
+     *
+     * @param values The array holding the values.
+     * @param from The index of the first value to add.
+     * @param to The index after the last value to add.
+     */
+    void addAll(final float[] values, final int from, final int to) {
+        long n = 0;
+        double blockSum = 0.0;
+        double blockMin = Double.POSITIVE_INFINITY;
+        double blockMax = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; ++i) {
+            final float v = values[i];
+            if (v == v) {
+                ++n;
+                blockSum += v;
+                blockMin = Math.min(blockMin, v);
+                blockMax = Math.max(blockMax, v);
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+
+        final double blockMean = blockSum / n;
+        double blockM2 = 0.0;
+        for (int i = from; i < to; ++i) {
+            final float v = values[i];
+            if (v == v) {
+                final double d = v - blockMean;
+                blockM2 += d * d;
+            }
+        }
+
+        final StatAccumulator block = new StatAccumulator();
+        block.count = n;
+        block.sum = blockSum;
+        block.mean = blockMean;
+        block.m2 = blockM2;
+        block.min = blockMin;
+        block.max = blockMax;
+        merge(block);
+    }
+
+    /**
+     * Adds every value accumulated by \em other to this accumulator. \em other is not modified.
+     *
+     * @param other The accumulator to merge into this one.
+     */
+    void merge(final StatAccumulator other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            sum = other.sum;
+            compensation = other.compensation;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+
+        final long total = count + other.count;
+        final double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+        addToSum(other.sum, other.compensation);
+
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Adds \em value and a previously lost \em correction to the compensated sum.
+     */
+    private void addToSum(final double value, final double correction) {
+        final double t = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - t) + value;
+        }
+        else {
+            compensation += (value - t) + sum;
+        }
+        compensation += correction;
+        sum = t;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The sum of the values, or \em 0 if there are none.
+     */
+    double getSum() {
+        return sum + compensation;
+    }
+
+    /**
+     * @return The mean of the values, or \em 0 if there are none.
+     */
+    double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return The population variance of the values, or \em 0 if there are none.
+     */
+    double getVariance() {
+        return count == 0 ? 0.0 : m2 / count;
+    }
+
+    /**
+     * @return The smallest value, or \em 0 if there are none.
+     */
+    double getMin() {
+        return count == 0 ? 0.0 : min;
+    }
+
+    /**
+     * @return The largest value, or \em 0 if there are none.
+     */
+    double getMax() {
+        return count == 0 ? 0.0 : max;
+    }
+}
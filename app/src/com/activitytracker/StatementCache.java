@@ -0,0 +1,133 @@
+package com.activitytracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the prepared statements that have been compiled against a single database connection so that they may be
+ * reused, rather than re-compiled, each time the same SQL is executed.
+ *
+ * Statements handed out by StatementCache#prepare() are owned by the cache: callers must close any ResultSet they
+ * obtain from them, but must \em not close the statements themselves. All statements are closed together by
+ * StatementCache#close().
+ *
+ * As with the connection it wraps, an instance of this class must only be used by one thread at a time.
+ */
+class StatementCache {
+    /**
+     * The connection that all cached statements were prepared against.
+     */
+    private final Connection m_conn;
+    /**
+     * Prepared statements keyed by the SQL they were compiled from.
+     */
+    private final Map<String, PreparedStatement> m_statements = new HashMap<>();
+    /**
+     * The number of times StatementCache#prepare() returned an already compiled statement.
+     */
+    private long m_hits = 0;
+    /**
+     * The number of times StatementCache#prepare() had to compile a new statement.
+     */
+    private long m_misses = 0;
+
+    /**
+     * @param conn The connection against which statements will be prepared.
+     */
+    StatementCache(final Connection conn) {
+        m_conn = conn;
+    }
+
+    /**
+     * Returns a prepared statement for \em sqlQuery, compiling and caching it if this is the first time it has been
+     * requested.
+     *
+     * Any parameters set by a previous user of the statement are cleared.
+     *
+     * @param sqlQuery The SQL code of the statement.
+     *
+     * @return A prepared statement owned by this cache.
+     *
+     * @throws SQLException Thrown if the statement cannot be compiled.
+     */
+    PreparedStatement prepare(final String sqlQuery) throws SQLException {
+        return prepare(sqlQuery, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Returns a prepared statement for the \em INSERT statement \em sqlQuery that makes the keys generated for new
+     * rows available through PreparedStatement#getGeneratedKeys(). Otherwise identical to StatementCache#prepare().
+     *
+     * @param sqlQuery The SQL code of the statement.
+     *
+     * @return A prepared statement owned by this cache.
+     *
+     * @throws SQLException Thrown if the statement cannot be compiled.
+     */
+    PreparedStatement prepareInsert(final String sqlQuery) throws SQLException {
+        return prepare(sqlQuery, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    private PreparedStatement prepare(final String sqlQuery, final int autoGeneratedKeys) throws SQLException {
+        PreparedStatement stmt = m_statements.get(sqlQuery);
+
+        if (stmt == null || stmt.isClosed()) {
+            stmt = m_conn.prepareStatement(sqlQuery, autoGeneratedKeys);
+            m_statements.put(sqlQuery, stmt);
+            ++m_misses;
+        }
+        else {
+            stmt.clearParameters();
+            ++m_hits;
+        }
+
+        return stmt;
+    }
+
+    /**
+     * @return The connection that this cache prepares statements against.
+     */
+    Connection connection() {
+        return m_conn;
+    }
+
+    /**
+     * @return The number of statements currently held open by this cache.
+     */
+    int openStatements() {
+        return m_statements.size();
+    }
+
+    /**
+     * @return The number of requests that were served by an already compiled statement.
+     */
+    long hits() {
+        return m_hits;
+    }
+
+    /**
+     * @return The number of requests that required a statement to be compiled.
+     */
+    long misses() {
+        return m_misses;
+    }
+
+    /**
+     * Closes every cached statement. The underlying connection is left open.
+     */
+    void close() {
+        for (final PreparedStatement stmt : m_statements.values()) {
+            try {
+                stmt.close();
+            }
+            catch (final SQLException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        m_statements.clear();
+    }
+}
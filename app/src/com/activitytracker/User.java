@@ -60,44 +60,60 @@ class User {
      * attributes in the database.
      */
     private DBManager dbManager = null;
+    /**
+     * The ID of the run the user last created (see DBManager#getUserLastRID()), once User#lastRIDKnown.
+     *
+     * Imports read and replace it for every run, so it is held here rather than read from the database each time.
+     * Changes are written back by User#flushLastRID(). This assumes that the user's runs are only imported through
+     * this User object.
+     */
+    private int lastRID = 0;
+    /**
+     * True once User#lastRID has been read from the database or set.
+     */
+    private boolean lastRIDKnown = false;
+    /**
+     * True if User#lastRID has been set since it was last written to the database.
+     */
+    private boolean lastRIDDirty = false;
 
+    /**
+     * Authenticates a user and populates the User object with their profile.
+     *
+     * The user's credentials and profile are read from the database in a single query using
+     * DBManager#getUserProfile(), and the candidate password is checked against the hash and salt in that row.
+     *
+     * @param dbManager An instance of DBManager with which we access the database.
+     * @param emailAddress The email address the user is logging in with.
+     * @param plaintextPassword The candidate password the user supplied.
+     *
+     * @throws AuthenticationException Thrown if the password does not match the one stored for the user.
+     * @throws NoSuchElementException Thrown if no user with email address \em emailAddress exists.
+     */
     User(final DBManager dbManager, final String emailAddress, final String plaintextPassword) throws AuthenticationException{
 
         this.dbManager = dbManager;
-        if (this.dbManager.userExists(emailAddress)) {
-
-            this.id = dbManager.getUserIDByEmail(emailAddress);
-
-            String passHash = this.dbManager.getUserStringAttribute(UserAttribute.PASSWORD, this.id);
-            byte[] passSalt = this.dbManager.getUserPassSalt(this.id);
-
-            SecureString candidatePassword = new SecureString(plaintextPassword, passSalt);
-
-            if (candidatePassword.equalString(passHash)) {
-
+        final UserProfile profile = this.dbManager.getUserProfile(emailAddress);
 
-                this.name = this.dbManager.getUserStringAttribute(UserAttribute.NAME, this.id);
-//                this.emailAddress = this.dbManager.getEmailAddress(this.id);
-                this.emailAddress = emailAddress;
-                this.dateOfBirth = this.dbManager.getDateOfBirth(this.id);
-                this.sex = this.dbManager.getUserSex(this.id);
-                this.height = this.dbManager.getUserFloatAttribute(UserAttribute.HEIGHT, this.id);
-                this.weight = this.dbManager.getUserFloatAttribute(UserAttribute.WEIGHT, this.id);
-
-                System.out.println("Authentication succeeded for " + this.name);
-
-            }
-            else {
+        if (profile == null) {
+            throw new NoSuchElementException("No such user exists.");
+        }
 
-                throw new AuthenticationException("Incorrect password.");
+        SecureString candidatePassword = new SecureString(plaintextPassword, profile.passwordSalt);
 
-            }
+        if (!candidatePassword.equalString(profile.passwordHash)) {
+            throw new AuthenticationException("Incorrect password.");
         }
-        else {
 
-            throw new NoSuchElementException("No such user exists.");
+        this.id = profile.id;
+        this.name = profile.name;
+        this.emailAddress = profile.emailAddress;
+        this.dateOfBirth = profile.dateOfBirth;
+        this.sex = profile.sex;
+        this.height = profile.height;
+        this.weight = profile.weight;
 
-        }
+        System.out.println("Authentication succeeded for " + this.name);
 
     }
 
@@ -149,9 +165,59 @@ class User {
         return this.dateOfBirth;
     }
 
-    public int getLastRID() { return this.dbManager.getUserLastRID(this.id); }
+    /**
+     * Retrieves the ID of the run the user last created. It is only read from the database the first time; after
+     * that the value held by this object is returned, including any change that has not been flushed yet.
+     *
+     * @return The ID of the user's last run, or \em 0 if there is none.
+     */
+    public synchronized int getLastRID() {
+        if (!this.lastRIDKnown) {
+            this.lastRID = this.dbManager.getUserLastRID(this.id);
+            this.lastRIDKnown = true;
+        }
+        return this.lastRID;
+    }
+
+    /**
+     * Records the run the user last created. The database is not updated until User#flushLastRID() is called.
+     *
+     * @param rID The ID of the run.
+     */
+    public synchronized void setLastRID(final int rID) {
+        this.lastRID = rID;
+        this.lastRIDKnown = true;
+        this.lastRIDDirty = true;
+    }
+
+    /**
+     * Writes the user's last run to the database, if it has been set since it was last written.
+     *
+     * This must be called inside the transaction that inserted the run, after the insert. The run and the reference
+     * to it are then committed together, so that after a crash the user's last run is neither a run that was never
+     * committed nor one older than the last run that was.
+     *
+     * @return True if the last run was written or did not need to be, False otherwise.
+     */
+    synchronized boolean flushLastRID() {
+        if (!this.lastRIDDirty) {
+            return true;
+        }
+        if (!this.dbManager.setUserLastRID(this.id, this.lastRID)) {
+            return false;
+        }
+        this.lastRIDDirty = false;
+        return true;
+    }
 
-    public void setLastRID(final int rID) { this.dbManager.setUserLastRID(this.id, rID); }
+    /**
+     * Forgets the user's last run, so that it is read from the database again. Called when the transaction that was
+     * to write it (see User#flushLastRID()) has been rolled back.
+     */
+    synchronized void discardLastRID() {
+        this.lastRIDKnown = false;
+        this.lastRIDDirty = false;
+    }
 
     public Sex getSex() {
         return this.sex;
@@ -0,0 +1,62 @@
+package com.activitytracker;
+
+import java.util.Date;
+
+/**
+ * A read-only snapshot of one row of the Users table, including the user's credentials.
+ *
+ * Instances are created by DBManager#getUserProfile() so that the User constructor can authenticate and populate
+ * itself from a single row read, instead of querying the database once per attribute.
+ */
+class UserProfile {
+    /**
+     * The user's unique ID.
+     */
+    final int id;
+    /**
+     * The user's full name (\em e.g., Johnathan Doe).
+     */
+    final String name;
+    /**
+     * The email address the user registered with.
+     */
+    final String emailAddress;
+    /**
+     * The user's date of birth.
+     */
+    final Date dateOfBirth;
+    /**
+     * The user's sex. Can be one of User.Sex.MALE or User.Sex.FEMALE.
+     */
+    final User.Sex sex;
+    /**
+     * The user's height in metres.
+     */
+    final float height;
+    /**
+     * The user's weight in kilograms.
+     */
+    final float weight;
+    /**
+     * The user's encrypted password hash, as produced by SecureString.
+     */
+    final String passwordHash;
+    /**
+     * The salt that was used to encrypt the user's password.
+     */
+    final byte[] passwordSalt;
+
+    UserProfile(final int id, final String name, final String emailAddress, final Date dateOfBirth,
+                final User.Sex sex, final float height, final float weight, final String passwordHash,
+                final byte[] passwordSalt) {
+        this.id = id;
+        this.name = name;
+        this.emailAddress = emailAddress;
+        this.dateOfBirth = dateOfBirth;
+        this.sex = sex;
+        this.height = height;
+        this.weight = weight;
+        this.passwordHash = passwordHash;
+        this.passwordSalt = passwordSalt;
+    }
+}